@@ -0,0 +1,57 @@
+package com.p4square.groupsindexer.benchmarks;
+
+import com.p4square.ccbapi.model.GroupProfile;
+import com.p4square.groupsindexer.model.GroupSearchDocumentAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting CCB group profiles into search documents.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AdaptBenchmark {
+
+    @Param({ "100", "1000", "10000", "50000" })
+    public int groupCount;
+
+    private List<GroupProfile> profiles;
+    private GroupSearchDocumentAdapter adapter;
+
+    @Setup
+    public void setup() {
+        profiles = new GroupProfileGenerator(42).generate(groupCount);
+        adapter = new GroupSearchDocumentAdapter();
+    }
+
+    @Benchmark
+    public void adaptAll(Blackhole blackhole) {
+        for (GroupProfile profile : profiles) {
+            blackhole.consume(adapter.apply(profile));
+        }
+    }
+
+    @Benchmark
+    public void abbreviateNames(Blackhole blackhole) {
+        for (GroupProfile profile : profiles) {
+            blackhole.consume(GroupSearchDocumentAdapter.abbreviateName(profile.getMainLeader().getLastName()));
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package com.p4square.groupsindexer.benchmarks;
+
+import com.p4square.ccbapi.model.Address;
+import com.p4square.ccbapi.model.CustomPulldownFieldValue;
+import com.p4square.ccbapi.model.GroupProfile;
+import com.p4square.ccbapi.model.IndividualReference;
+import com.p4square.ccbapi.model.Reference;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * FakeCCBServer is a local stand-in for a CCB instance and the host serving its group images.
+ *
+ * It answers the group_profiles, custom_field_labels and lookup table services of the CCB XML API under
+ * /api.php, and serves an image for every group under /images/. Groups are generated from a seed, one group at
+ * a time, so every page is consistent and large group counts don't need to be held in memory.
+ *
+ * Each request can be delayed and can fail with a 503 at a configurable rate.
+ */
+public class FakeCCBServer implements AutoCloseable {
+
+    private static final int FIRST_GROUP_ID = 1000;
+    private static final String LAST_MODIFIED = "Mon, 01 Jan 2018 00:00:00 GMT";
+
+    /**
+     * Settings for a FakeCCBServer.
+     */
+    public static class Options {
+        private long seed = 42;
+        private int groupCount = 1000;
+        private int modifiedPercent = 100;
+        private int imageBytes = 32 * 1024;
+        private int imageVersion = 1;
+        private int apiLatencyMs;
+        private int imageLatencyMs;
+        private double apiErrorRate;
+        private double imageErrorRate;
+        private int threads = 16;
+
+        public Options withSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Options withGroupCount(int groupCount) {
+            this.groupCount = groupCount;
+            return this;
+        }
+
+        /**
+         * @param modifiedPercent The percent of groups returned when the request has a modified_since date.
+         */
+        public Options withModifiedPercent(int modifiedPercent) {
+            this.modifiedPercent = modifiedPercent;
+            return this;
+        }
+
+        public Options withImageBytes(int imageBytes) {
+            this.imageBytes = imageBytes;
+            return this;
+        }
+
+        /**
+         * @param imageVersion Changing the version changes every image's content and ETag.
+         */
+        public Options withImageVersion(int imageVersion) {
+            this.imageVersion = imageVersion;
+            return this;
+        }
+
+        public Options withApiLatencyMs(int apiLatencyMs) {
+            this.apiLatencyMs = apiLatencyMs;
+            return this;
+        }
+
+        public Options withImageLatencyMs(int imageLatencyMs) {
+            this.imageLatencyMs = imageLatencyMs;
+            return this;
+        }
+
+        /**
+         * @param apiErrorRate The fraction of API requests which fail, from 0 to 1.
+         */
+        public Options withApiErrorRate(double apiErrorRate) {
+            this.apiErrorRate = apiErrorRate;
+            return this;
+        }
+
+        /**
+         * @param imageErrorRate The fraction of image requests which fail, from 0 to 1.
+         */
+        public Options withImageErrorRate(double imageErrorRate) {
+            this.imageErrorRate = imageErrorRate;
+            return this;
+        }
+
+        public Options withThreads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+    }
+
+    private final Options options;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final AtomicLong apiRequests = new AtomicLong();
+    private final AtomicLong imageRequests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    public FakeCCBServer(Options options) throws IOException {
+        this.options = options;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(options.threads, r -> {
+            final Thread t = new Thread(r, "fake-ccb-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        server.setExecutor(executor);
+        server.createContext("/api.php", this::handleApi);
+        server.createContext("/images/", this::handleImage);
+        server.start();
+    }
+
+    /**
+     * @return The URL to configure as CCBAPIURL.
+     */
+    public String getApiUrl() {
+        return getBaseUrl() + "/api.php";
+    }
+
+    public String getImageBaseUrl() {
+        return getBaseUrl() + "/images/group-";
+    }
+
+    public long getApiRequests() {
+        return apiRequests.get();
+    }
+
+    public long getImageRequests() {
+        return imageRequests.get();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    private void handleApi(HttpExchange exchange) throws IOException {
+        try {
+            apiRequests.incrementAndGet();
+            if (delayOrFail(exchange, options.apiLatencyMs, options.apiErrorRate)) {
+                return;
+            }
+
+            final Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            final String service = params.getOrDefault("srv", "");
+            exchange.getResponseHeaders().set("Content-Type", "application/xml; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0);
+            try (Writer out = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)) {
+                out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<ccb_api><response>");
+                out.write("<service>" + escape(service) + "</service>");
+                if ("group_profiles".equals(service)) {
+                    writeGroups(out, params);
+                } else if ("custom_field_labels".equals(service)) {
+                    writeCustomFieldLabels(out);
+                } else if (getLookupTable(service) != null) {
+                    writeLookupTable(out, getLookupTable(service));
+                } else {
+                    out.write("<errors count=\"1\"><error number=\"2\" type=\"Service Permission\">" +
+                            "Invalid service: " + escape(service) + "</error></errors>");
+                }
+                out.write("</response></ccb_api>");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleImage(HttpExchange exchange) throws IOException {
+        try {
+            imageRequests.incrementAndGet();
+            if (delayOrFail(exchange, options.imageLatencyMs, options.imageErrorRate)) {
+                return;
+            }
+
+            final String path = exchange.getRequestURI().getPath();
+            final int id;
+            try {
+                id = Integer.parseInt(path.substring(path.lastIndexOf('-') + 1, path.lastIndexOf('.')));
+            } catch (RuntimeException e) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            final String etag = "\"g" + id + "-v" + options.imageVersion + "\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            final byte[] image = new byte[options.imageBytes];
+            new Random(options.seed * 31 + id * 17L + options.imageVersion).nextBytes(image);
+            exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+            exchange.sendResponseHeaders(200, image.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(image);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Sleep for the configured latency, then maybe send an error.
+     *
+     * @return true if an error was sent.
+     */
+    private boolean delayOrFail(HttpExchange exchange, int latencyMs, double errorRate) throws IOException {
+        if (latencyMs > 0) {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            injectedErrors.incrementAndGet();
+            exchange.sendResponseHeaders(503, -1);
+            return true;
+        }
+        return false;
+    }
+
+    private void writeGroups(Writer out, Map<String, String> params) throws IOException {
+        int first = 0;
+        int last = options.groupCount;
+        if (params.containsKey("per_page")) {
+            final int perPage = Integer.parseInt(params.get("per_page"));
+            final int page = Integer.parseInt(params.getOrDefault("page", "1"));
+            first = Math.min(options.groupCount, (page - 1) * perPage);
+            last = Math.min(options.groupCount, first + perPage);
+        }
+        final boolean modifiedOnly = params.containsKey("modified_since");
+
+        // Count first so the count attribute is right without buffering the groups.
+        int count = 0;
+        for (int i = first; i < last; i++) {
+            if (!modifiedOnly || isModified(FIRST_GROUP_ID + i)) {
+                count++;
+            }
+        }
+
+        out.write("<groups count=\"" + count + "\">");
+        for (int i = first; i < last; i++) {
+            final int id = FIRST_GROUP_ID + i;
+            if (!modifiedOnly || isModified(id)) {
+                writeGroup(out, new GroupProfileGenerator(options.seed * 31 + id, getImageBaseUrl())
+                        .generateProfile(id));
+            }
+        }
+        out.write("</groups>");
+    }
+
+    private boolean isModified(int id) {
+        return Math.floorMod(id * 2654435761L, 100) < options.modifiedPercent;
+    }
+
+    private void writeGroup(Writer out, GroupProfile profile) throws IOException {
+        final StringBuilder sb = new StringBuilder(2048);
+        sb.append("<group id=\"").append(profile.getId()).append("\">");
+        element(sb, "name", profile.getName());
+        element(sb, "description", profile.getDescription());
+        element(sb, "image", profile.getImageUrl());
+        reference(sb, "campus", profile.getCampus());
+
+        final IndividualReference leader = profile.getMainLeader();
+        sb.append("<main_leader id=\"").append(leader.getId()).append("\">");
+        element(sb, "first_name", leader.getFirstName());
+        element(sb, "last_name", leader.getLastName());
+        element(sb, "full_name", leader.getFirstName() + " " + leader.getLastName());
+        element(sb, "email", "leader" + leader.getId() + "@example.com");
+        sb.append("</main_leader>");
+
+        reference(sb, "group_type", profile.getGroupType());
+        reference(sb, "department", profile.getDepartment());
+        reference(sb, "area", profile.getArea());
+        element(sb, "current_members", String.valueOf(profile.getCurrentMembers()));
+        element(sb, "group_capacity",
+                profile.getGroupCapacity() == null ? "Unlimited" : String.valueOf(profile.getGroupCapacity()));
+
+        sb.append("<addresses>");
+        for (Address address : profile.getAddresses()) {
+            sb.append("<address type=\"meeting\">");
+            element(sb, "street_address", address.getStreetAddress());
+            element(sb, "city", address.getCity());
+            element(sb, "state", address.getState());
+            element(sb, "zip", address.getZip());
+            sb.append("</address>");
+        }
+        sb.append("</addresses>");
+
+        reference(sb, "meeting_day", profile.getMeetingDay());
+        reference(sb, "meeting_time", profile.getMeetingTime());
+        element(sb, "childcare_provided", String.valueOf(profile.isChildcareProvided()));
+        element(sb, "interaction_type", toLabel(profile.getInteractionType().name()));
+
+        sb.append("<user_defined_fields>");
+        for (CustomPulldownFieldValue field : profile.getCustomPulldownFields()) {
+            sb.append("<user_defined_field>");
+            element(sb, "name", field.getName());
+            element(sb, "label", field.getLabel());
+            sb.append("<selection id=\"").append(field.getSelection().getId()).append("\">")
+                    .append(escape(field.getSelection().getLabel())).append("</selection>");
+            element(sb, "admin_only", "false");
+            sb.append("</user_defined_field>");
+        }
+        sb.append("</user_defined_fields>");
+
+        element(sb, "listed", String.valueOf(profile.isListed()));
+        element(sb, "public_search_listed", String.valueOf(profile.isPublicSearchListed()));
+        element(sb, "inactive", String.valueOf(!profile.isActive()));
+        sb.append("</group>");
+        out.write(sb.toString());
+    }
+
+    private void writeCustomFieldLabels(Writer out) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("<custom_fields count=\"3\">");
+        for (int i = 1; i <= 3; i++) {
+            sb.append("<custom_field>");
+            element(sb, "name", "udf_grp_pulldown_" + i);
+            element(sb, "label", "Field " + i);
+            element(sb, "admin_only", "false");
+            sb.append("</custom_field>");
+        }
+        sb.append("</custom_fields>");
+        out.write(sb.toString());
+    }
+
+    private void writeLookupTable(Writer out, String[] values) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("<items count=\"").append(values.length).append("\">");
+        for (int i = 0; i < values.length; i++) {
+            sb.append("<item>");
+            element(sb, "id", String.valueOf(i + 1));
+            element(sb, "name", values[i]);
+            element(sb, "order", String.valueOf(i + 1));
+            sb.append("</item>");
+        }
+        sb.append("</items>");
+        out.write(sb.toString());
+    }
+
+    /**
+     * @param service A lookup table service, such as area_list.
+     * @return The table's values, or null if service is not a known lookup table.
+     */
+    private static String[] getLookupTable(String service) {
+        if (!service.endsWith("_list")) {
+            return null;
+        }
+        return GroupProfileGenerator.getLookupTable(service.substring(0, service.length() - "_list".length()));
+    }
+
+    private static void reference(StringBuilder sb, String name, Reference reference) {
+        if (reference == null) {
+            sb.append('<').append(name).append(" id=\"\"/>");
+        } else {
+            sb.append('<').append(name).append(" id=\"").append(reference.getId()).append("\">")
+                    .append(escape(reference.getName())).append("</").append(name).append('>');
+        }
+    }
+
+    private static void element(StringBuilder sb, String name, String value) {
+        sb.append('<').append(name).append('>');
+        if (value != null) {
+            sb.append(escape(value));
+        }
+        sb.append("</").append(name).append('>');
+    }
+
+    /**
+     * @return MEMBERS_INTERACT as "Members Interact".
+     */
+    private static String toLabel(String enumName) {
+        final StringBuilder sb = new StringBuilder();
+        for (String word : enumName.split("_")) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(word.charAt(0)).append(word.substring(1).toLowerCase());
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String value) {
+        final StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '&': sb.append("&amp;"); break;
+                case '"': sb.append("&quot;"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        final Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            final int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                        URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            } else if (!pair.isEmpty()) {
+                params.put(URLDecoder.decode(pair, "UTF-8"), "");
+            }
+        }
+        return params;
+    }
+}
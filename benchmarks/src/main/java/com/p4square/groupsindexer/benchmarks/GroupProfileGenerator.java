@@ -0,0 +1,187 @@
+package com.p4square.groupsindexer.benchmarks;
+
+import com.p4square.ccbapi.model.Address;
+import com.p4square.ccbapi.model.CustomPulldownFieldValue;
+import com.p4square.ccbapi.model.GroupProfile;
+import com.p4square.ccbapi.model.IndividualReference;
+import com.p4square.ccbapi.model.InteractionType;
+import com.p4square.ccbapi.model.PulldownSelection;
+import com.p4square.ccbapi.model.Reference;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * GroupProfileGenerator builds synthetic CCB group profiles which look like ours: a few campuses and group
+ * types, HTML descriptions of a few sentences to a few paragraphs, and three custom pulldown fields.
+ *
+ * The output depends only on the seed, so runs are comparable.
+ */
+public class GroupProfileGenerator {
+
+    private static final String[] CAMPUSES = { "Puyallup", "Tacoma", "Bonney Lake", "Online" };
+    private static final String[] GROUP_TYPES = { "Community Group", "Growth Group", "Serve Team", "Class" };
+    private static final String[] DEPARTMENTS = { "Adults", "Students", "Kids", "Care" };
+    private static final String[] DAYS = { "Sunday", "Monday", "Tuesday", "Wednesday", "Thursday", "Friday",
+            "Saturday" };
+    private static final String[] TIMES = { "Morning", "Afternoon", "Evening" };
+    private static final String[][] UDF_VALUES = {
+            { "Men", "Women", "Co-ed" },
+            { "Young Adults", "Married", "Parents", "Empty Nesters", "Seniors", "All Ages" },
+            { "Bible Study", "Book Study", "Sermon Discussion", "Prayer", "Activity" },
+    };
+    private static final String[] CITIES = { "Puyallup", "Tacoma", "Sumner", "Bonney Lake", "Graham",
+            "Spanaway", "Orting", "Federal Way" };
+    private static final String[] FIRST_NAMES = { "Jesse", "Anna", "Michael", "Sarah", "David", "Grace", "John",
+            "Maria", "Daniel", "Rachel", "Samuel", "Hannah" };
+    private static final String[] LAST_NAMES = { "Morgan", "Smith", "Johnson", "Van Buren", "Garcia",
+            "De La Cruz", "Nguyen", "O'Brien", "Anderson", "St. John" };
+    private static final String[] WORDS = ("we meet together every week to study the bible share life pray for "
+            + "one another and grow in faith all are welcome whether you are new to church or have been following "
+            + "jesus for years our group enjoys food conversation community service and fellowship bring a friend "
+            + "childcare is available kids play while adults talk we are reading through the gospel of john this "
+            + "season come as you are coffee and snacks provided questions contact the leader").split(" ");
+
+    private final Random random;
+    private final String imageBaseUrl;
+
+    public GroupProfileGenerator(long seed) {
+        this(seed, "https://images.example.com/groups/");
+    }
+
+    /**
+     * @param seed Random seed.
+     * @param imageBaseUrl Prefix for image urls. The group id and ".jpg" are appended.
+     */
+    public GroupProfileGenerator(long seed, String imageBaseUrl) {
+        this.random = new Random(seed);
+        this.imageBaseUrl = imageBaseUrl;
+    }
+
+    /**
+     * @param table A CCB lookup table: area, meet_day, or udf_grp_pulldown_1 to 3.
+     * @return The table's values in id order, starting at id 1. Null for unknown tables.
+     */
+    static String[] getLookupTable(String table) {
+        switch (table) {
+            case "area":
+                return CAMPUSES;
+            case "meet_day":
+                return DAYS;
+            case "udf_grp_pulldown_1":
+                return UDF_VALUES[0];
+            case "udf_grp_pulldown_2":
+                return UDF_VALUES[1];
+            case "udf_grp_pulldown_3":
+                return UDF_VALUES[2];
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param count The number of profiles to generate.
+     * @return Listed, active community and growth groups which pass the sync's filter.
+     */
+    public List<GroupProfile> generate(int count) {
+        final List<GroupProfile> profiles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            profiles.add(generateProfile(1000 + i));
+        }
+        return profiles;
+    }
+
+    /**
+     * @param id The group id.
+     * @return The next profile from this generator, with the given id.
+     */
+    public GroupProfile generateProfile(int id) {
+        final GroupProfile profile = new GroupProfile();
+        profile.setId(id);
+        profile.setName(pick(CITIES) + " " + pick(UDF_VALUES[1]) + " " + pick(UDF_VALUES[2]));
+        profile.setDescription(description());
+        profile.setImageUrl(imageBaseUrl + id + ".jpg");
+
+        final IndividualReference leader = new IndividualReference();
+        leader.setId(50000 + random.nextInt(5000));
+        leader.setFirstName(pick(FIRST_NAMES));
+        leader.setLastName(pick(LAST_NAMES));
+        profile.setMainLeader(leader);
+
+        final Address address = new Address();
+        address.setCity(pick(CITIES));
+        address.setState("WA");
+        address.setZip(String.valueOf(98371 + random.nextInt(20)));
+        final List<Address> addresses = new ArrayList<>();
+        addresses.add(address);
+        profile.setAddresses(addresses);
+
+        profile.setCurrentMembers(random.nextInt(20));
+        profile.setGroupCapacity(random.nextInt(4) == 0 ? null : 12 + random.nextInt(12));
+        profile.setChildcareProvided(random.nextBoolean());
+        profile.setListed(true);
+        profile.setPublicSearchListed(true);
+        profile.setActive(true);
+        profile.setInteractionType(InteractionType.MEMBERS_INTERACT);
+        profile.setCampus(reference(CAMPUSES));
+        profile.setGroupType(reference(GROUP_TYPES, 2));
+        profile.setDepartment(reference(DEPARTMENTS));
+        profile.setArea(reference(CAMPUSES));
+        profile.setMeetingDay(reference(DAYS));
+        profile.setMeetingTime(reference(TIMES));
+
+        final List<CustomPulldownFieldValue> customFields = new ArrayList<>();
+        for (int i = 0; i < UDF_VALUES.length; i++) {
+            final int choice = random.nextInt(UDF_VALUES[i].length);
+            final PulldownSelection selection = new PulldownSelection();
+            selection.setId(choice + 1);
+            selection.setLabel(UDF_VALUES[i][choice]);
+
+            final CustomPulldownFieldValue field = new CustomPulldownFieldValue();
+            field.setName("udf_grp_pulldown_" + (i + 1));
+            field.setLabel("Field " + (i + 1));
+            field.setSelection(selection);
+            customFields.add(field);
+        }
+        profile.setCustomPulldownFields(customFields);
+
+        return profile;
+    }
+
+    /**
+     * @return One to four paragraphs of 10 to 60 words each.
+     */
+    private String description() {
+        final StringBuilder sb = new StringBuilder();
+        final int paragraphs = 1 + random.nextInt(4);
+        for (int p = 0; p < paragraphs; p++) {
+            sb.append("<p>");
+            final int words = 10 + random.nextInt(50);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    sb.append(' ');
+                }
+                sb.append(pick(WORDS));
+            }
+            sb.append(".</p>");
+        }
+        return sb.toString();
+    }
+
+    private Reference reference(String[] names) {
+        return reference(names, names.length);
+    }
+
+    private Reference reference(String[] names, int limit) {
+        final int choice = random.nextInt(limit);
+        final Reference reference = new Reference();
+        reference.setId(choice + 1);
+        reference.setName(names[choice]);
+        return reference;
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,151 @@
+package com.p4square.groupsindexer.benchmarks;
+
+import com.p4square.ccbapi.CCBAPIClient;
+import com.p4square.groupsindexer.SyncGroups;
+import com.p4square.groupsindexer.metrics.InMemoryMetricsRegistry;
+import com.p4square.groupsindexer.output.FileSystemOutputSink;
+import com.p4square.groupsindexer.output.InMemoryOutputSink;
+import com.p4square.groupsindexer.output.OutputSink;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * LoadHarness runs complete SyncGroups invocations against a {@link FakeCCBServer} and a local output sink, and
+ * reports wall time, throughput, peak heap and the sync metrics for each run. Nothing leaves the machine.
+ *
+ * Usage:
+ * <pre>
+ *     java -cp target/benchmarks.jar com.p4square.groupsindexer.benchmarks.LoadHarness \
+ *         --groups=10000 --runs=3 --image-latency-ms=20 INCREMENTAL_SYNC=true
+ * </pre>
+ *
+ * Options:
+ * <ul>
+ *  <li>--groups - Number of groups the fake CCB returns (default 1000).</li>
+ *  <li>--runs - Number of syncs to run with the same handler, as in one warm container (default 3).</li>
+ *  <li>--output - "memory", or a directory to write the output to (default memory).</li>
+ *  <li>--api-latency-ms, --image-latency-ms - Delay added to each request (default 0).</li>
+ *  <li>--api-error-rate, --image-error-rate - Fraction of requests which fail with a 503 (default 0).</li>
+ *  <li>--image-bytes - Size of each image (default 32768).</li>
+ *  <li>--modified-percent - Percent of groups returned to incremental syncs (default 100).</li>
+ *  <li>--time-budget-ms - Remaining time reported by the Lambda context (default 900000).</li>
+ * </ul>
+ *
+ * Any other NAME=value argument is passed to SyncGroups as the environment variable NAME.
+ */
+public class LoadHarness {
+
+    public static void main(String[] args) throws Exception {
+        final Map<String, String> options = new HashMap<>();
+        final Map<String, String> settings = new HashMap<>();
+        for (String arg : args) {
+            final int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected --option=value or NAME=value: " + arg);
+            }
+            if (arg.startsWith("--")) {
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            } else {
+                settings.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+
+        final int groupCount = getInt(options, "groups", 1000);
+        final int runs = getInt(options, "runs", 3);
+        final long timeBudgetMs = getInt(options, "time-budget-ms", 900000);
+        final String output = options.getOrDefault("output", "memory");
+
+        final FakeCCBServer.Options serverOptions = new FakeCCBServer.Options()
+                .withGroupCount(groupCount)
+                .withApiLatencyMs(getInt(options, "api-latency-ms", 0))
+                .withImageLatencyMs(getInt(options, "image-latency-ms", 0))
+                .withApiErrorRate(getDouble(options, "api-error-rate", 0))
+                .withImageErrorRate(getDouble(options, "image-error-rate", 0))
+                .withImageBytes(getInt(options, "image-bytes", 32 * 1024))
+                .withModifiedPercent(getInt(options, "modified-percent", 100));
+
+        final OutputSink sink = "memory".equals(output)
+                ? new InMemoryOutputSink()
+                : new FileSystemOutputSink(Paths.get(output));
+        settings.putIfAbsent("BASE_URL", "https://groups.example.com");
+
+        try (FakeCCBServer server = new FakeCCBServer(serverOptions)) {
+            final InMemoryMetricsRegistry metrics = new InMemoryMetricsRegistry();
+            final SyncGroups handler = new SyncGroups(
+                    new CCBAPIClient(new URI(server.getApiUrl()), "harness", "harness"), sink, settings::get, metrics);
+
+            System.out.println(String.format(Locale.ROOT, "Syncing %d groups from %s to %s",
+                    groupCount, server.getApiUrl(), sink));
+            for (int run = 1; run <= runs; run++) {
+                final long apiRequests = server.getApiRequests();
+                final long imageRequests = server.getImageRequests();
+                final long errors = server.getInjectedErrors();
+
+                System.gc();
+                resetPeakHeap();
+                metrics.reset();
+                final long start = System.nanoTime();
+                String result;
+                try {
+                    result = handler.handleRequest(null, new HarnessContext(timeBudgetMs));
+                } catch (RuntimeException e) {
+                    result = "failed: " + e;
+                }
+                final double seconds = (System.nanoTime() - start) / 1e9;
+
+                System.out.println(String.format(Locale.ROOT,
+                        "Run %d: %s in %.2f s, %.0f groups/s, peak heap %.1f MB, "
+                                + "%d api requests, %d image requests, %d injected errors",
+                        run, result, seconds, groupCount / seconds, getPeakHeap() / (1024.0 * 1024.0),
+                        server.getApiRequests() - apiRequests,
+                        server.getImageRequests() - imageRequests,
+                        server.getInjectedErrors() - errors));
+                System.out.print(metrics);
+            }
+        }
+
+        if (sink instanceof InMemoryOutputSink) {
+            final InMemoryOutputSink memory = (InMemoryOutputSink) sink;
+            System.out.println(String.format(Locale.ROOT, "Output: %d objects, %.1f MB",
+                    memory.keys().size(), memory.getTotalBytes() / (1024.0 * 1024.0)));
+        }
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * @return The sum of each heap pool's peak usage since the last reset. An upper bound on the true peak.
+     */
+    private static long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static int getInt(Map<String, String> options, String name, int defaultValue) {
+        final String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static double getDouble(Map<String, String> options, String name, double defaultValue) {
+        final String value = options.get(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+}
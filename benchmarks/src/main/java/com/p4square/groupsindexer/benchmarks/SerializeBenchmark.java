@@ -0,0 +1,111 @@
+package com.p4square.groupsindexer.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.p4square.ccbapi.model.GroupProfile;
+import com.p4square.groupsindexer.model.CompactGroupsCollection;
+import com.p4square.groupsindexer.model.GroupSearchDocument;
+import com.p4square.groupsindexer.model.GroupSearchDocumentAdapter;
+import com.p4square.groupsindexer.model.GroupsCollection;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Jackson serialization of the published groups data, in the standard and compact schemas.
+ *
+ * Output goes to a stream which only counts bytes, so the serialized size is reported as the
+ * "serializedBytes" secondary result without buffering the document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializeBenchmark {
+
+    @Param({ "100", "1000", "10000", "50000" })
+    public int groupCount;
+
+    private ObjectMapper mapper;
+    private GroupsCollection collection;
+
+    /**
+     * Reports the size of the last document written.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Size {
+        public long serializedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            serializedBytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        final GroupSearchDocumentAdapter adapter = new GroupSearchDocumentAdapter();
+        final List<GroupSearchDocument> documents = new ArrayList<>(groupCount);
+        for (GroupProfile profile : new GroupProfileGenerator(42).generate(groupCount)) {
+            documents.add(adapter.apply(profile));
+        }
+
+        collection = new GroupsCollection();
+        collection.setLastUpdated(Instant.now());
+        collection.setLastFullSync(collection.getLastUpdated());
+        collection.setGroups(documents);
+    }
+
+    @Benchmark
+    public void serialize(Size size) throws IOException {
+        final CountingOutputStream out = new CountingOutputStream();
+        mapper.writeValue(out, collection);
+        size.serializedBytes = out.count;
+    }
+
+    @Benchmark
+    public void serializeCompact(Size size) throws IOException {
+        final CountingOutputStream out = new CountingOutputStream();
+        mapper.writeValue(out, new CompactGroupsCollection(collection));
+        size.serializedBytes = out.count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.p4square.groupsindexer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.p4square.groupsindexer.model.ChangefeedEntry;
+import com.p4square.groupsindexer.model.ChangefeedManifest;
+import com.p4square.groupsindexer.model.GroupChange;
+import com.p4square.groupsindexer.model.GroupSearchDocument;
+import com.p4square.groupsindexer.model.GroupsCollection;
+import com.p4square.groupsindexer.model.GroupsDelta;
+import com.p4square.groupsindexer.model.SnapshotFormat;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ChangefeedPublisher publishes the changes between consecutive versions of the groups data.
+ *
+ * Every time the content of the {@link GroupsCollection} changes it gets a new version, and a {@link GroupsDelta}
+ * from the previous version is published. The {@link ChangefeedManifest} points at the current snapshot and the
+ * most recent deltas, so a client with a cached copy can patch it instead of downloading everything again.
+ *
+ * When there is no trustworthy previous version (first run, or a run which failed part way) the history is
+ * restarted and clients fall back to the snapshot.
+ */
+public class ChangefeedPublisher {
+
+    private static final Logger LOG = LogManager.getLogger(ChangefeedPublisher.class);
+
+    public static final String MANIFEST_KEY = "data/changefeed/manifest.json";
+    private static final String DELTA_PREFIX = "data/changefeed/delta-";
+
+    private final JsonPublisher publisher;
+    private final ObjectMapper mapper;
+    private final ChangefeedManifest manifest;
+    private final String baseUrl;
+    private final int history;
+
+    private GroupsCollection current;
+    private GroupsDelta delta;
+
+    /**
+     * @param publisher Publishes the deltas and manifest.
+     * @param mapper Serializes documents for comparison. Use the same mapper as the snapshot.
+     * @param manifest The previously published manifest, or an empty manifest.
+     * @param baseUrl Prefix for urls in the manifest.
+     * @param history The number of deltas to keep.
+     */
+    public ChangefeedPublisher(JsonPublisher publisher, ObjectMapper mapper, ChangefeedManifest manifest,
+                               String baseUrl, int history) {
+        this.publisher = publisher;
+        this.mapper = mapper;
+        this.manifest = manifest;
+        this.baseUrl = baseUrl;
+        this.history = history;
+    }
+
+    /**
+     * Give current its version and work out what changed since previous. Call before publishing current.
+     *
+     * @param previous The previously published collection, or null.
+     * @param current The new collection.
+     */
+    public void prepare(GroupsCollection previous, GroupsCollection current) {
+        this.current = current;
+
+        if (previous == null || manifest.getVersion() == 0 || previous.getVersion() != manifest.getVersion()) {
+            final long version = Math.max(manifest.getVersion(), previous != null ? previous.getVersion() : 0) + 1;
+            LOG.info("No usable previous version. Starting the changefeed at version " + version + ".");
+            current.setVersion(version);
+            manifest.getDeltas().clear();
+            delta = null;
+            return;
+        }
+
+        final GroupsDelta diff = diff(previous, current);
+        if (diff.isEmpty()) {
+            current.setVersion(previous.getVersion());
+            delta = null;
+        } else {
+            current.setVersion(diff.getToVersion());
+            delta = diff;
+        }
+    }
+
+    /**
+     * Publish the delta, if anything changed, and the manifest. Deltas beyond the history are deleted.
+     *
+     * @param snapshotKey The key the current collection is published under as JSON.
+     * @param formats Every encoding of the current collection, cheapest to decode first.
+     * @return The number of documents written or deleted.
+     */
+    public int publish(String snapshotKey, List<SnapshotFormat> formats) throws IOException {
+        int changed = 0;
+        if (delta != null) {
+            final String key = getDeltaKey(delta.getToVersion());
+            if (publisher.publish(key, delta)) {
+                changed++;
+            }
+            manifest.getDeltas().add(new ChangefeedEntry(delta, baseUrl + "/" + key));
+            LOG.info("Changefeed version " + delta.getToVersion() + ": " + delta.getAdded().size() + " added, " +
+                    delta.getRemoved().size() + " removed, " + delta.getChanged().size() + " changed.");
+        }
+        while (manifest.getDeltas().size() > history) {
+            manifest.getDeltas().remove(0);
+        }
+
+        manifest.setVersion(current.getVersion());
+        manifest.setLastUpdated(current.getLastUpdated());
+        manifest.setSnapshotUrl(baseUrl + "/" + snapshotKey);
+        manifest.setFormats(formats);
+        if (publisher.publish(MANIFEST_KEY, manifest)) {
+            changed++;
+        }
+
+        // Remove deltas which fell out of the history or belong to an abandoned history.
+        final Set<String> staleKeys = publisher.getPublishedKeys(DELTA_PREFIX);
+        for (ChangefeedEntry entry : manifest.getDeltas()) {
+            staleKeys.remove(getDeltaKey(entry.getToVersion()));
+        }
+        for (String key : staleKeys) {
+            publisher.unpublish(key);
+            changed++;
+        }
+
+        return changed;
+    }
+
+    private GroupsDelta diff(GroupsCollection previous, GroupsCollection current) {
+        final Map<Integer, JsonNode> before = new HashMap<>();
+        for (GroupSearchDocument document : previous.getGroups()) {
+            before.put(document.getId(), mapper.valueToTree(document));
+        }
+
+        final List<GroupSearchDocument> added = new ArrayList<>();
+        final List<GroupChange> changed = new ArrayList<>();
+        for (GroupSearchDocument document : current.getGroups()) {
+            final JsonNode old = before.remove(document.getId());
+            if (old == null) {
+                added.add(document);
+                continue;
+            }
+
+            final Map<String, JsonNode> fields = diffFields(old, mapper.valueToTree(document));
+            if (!fields.isEmpty()) {
+                changed.add(new GroupChange(document.getId(), fields));
+            }
+        }
+
+        final List<Integer> removed = new ArrayList<>(before.keySet());
+        Collections.sort(removed);
+
+        final GroupsDelta delta = new GroupsDelta();
+        delta.setFromVersion(previous.getVersion());
+        delta.setToVersion(previous.getVersion() + 1);
+        delta.setLastUpdated(current.getLastUpdated());
+        delta.setAdded(added);
+        delta.setRemoved(removed);
+        delta.setChanged(changed);
+        if (!mapper.valueToTree(previous.getSearchFields()).equals(mapper.valueToTree(current.getSearchFields()))) {
+            delta.setSearchFields(current.getSearchFields());
+        }
+        return delta;
+    }
+
+    /**
+     * @return The properties of after which differ from before, with their new values.
+     */
+    private static Map<String, JsonNode> diffFields(JsonNode before, JsonNode after) {
+        final Map<String, JsonNode> fields = new LinkedHashMap<>();
+        final Set<String> seen = new HashSet<>();
+        for (Iterator<Map.Entry<String, JsonNode>> it = after.fields(); it.hasNext(); ) {
+            final Map.Entry<String, JsonNode> field = it.next();
+            seen.add(field.getKey());
+            if (!field.getValue().equals(before.get(field.getKey()))) {
+                fields.put(field.getKey(), field.getValue());
+            }
+        }
+        for (Iterator<String> it = before.fieldNames(); it.hasNext(); ) {
+            final String name = it.next();
+            if (!seen.contains(name)) {
+                fields.put(name, NullNode.getInstance());
+            }
+        }
+        return fields;
+    }
+
+    private static String getDeltaKey(long version) {
+        return DELTA_PREFIX + version + ".json";
+    }
+}
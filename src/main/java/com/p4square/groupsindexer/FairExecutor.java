@@ -0,0 +1,109 @@
+package com.p4square.groupsindexer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * FairExecutor runs the tasks of several tenants on one bounded pool of threads.
+ *
+ * Each tenant has its own queue. Idle threads take the next task from the tenants with queued work in turn, so a
+ * tenant which queues thousands of images can't hold up a tenant which queues a few.
+ */
+public class FairExecutor {
+
+    private static final Logger LOG = LogManager.getLogger(FairExecutor.class);
+
+    private final Lock lock;
+    private final Condition available;
+    private final Map<String, Queue<Runnable>> queues;
+
+    // Tenants with queued tasks, in the order they take turns.
+    private final Deque<String> turns;
+
+    /**
+     * @param name Prefix for the thread names.
+     * @param threadCount The number of tasks run at once across every tenant.
+     */
+    public FairExecutor(String name, int threadCount) {
+        this.lock = new ReentrantLock();
+        this.available = lock.newCondition();
+        this.queues = new HashMap<>();
+        this.turns = new ArrayDeque<>();
+
+        for (int i = 1; i <= threadCount; i++) {
+            final Thread t = new Thread(this::work, name + "-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * @param tenant The tenant id.
+     * @return An Executor which queues tasks for tenant.
+     */
+    public Executor forTenant(String tenant) {
+        return task -> enqueue(tenant, task);
+    }
+
+    private void enqueue(String tenant, Runnable task) {
+        Objects.requireNonNull(task);
+        lock.lock();
+        try {
+            final Queue<Runnable> queue = queues.computeIfAbsent(tenant, k -> new ArrayDeque<>());
+            if (queue.isEmpty()) {
+                turns.addLast(tenant);
+            }
+            queue.add(task);
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Runnable take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (turns.isEmpty()) {
+                available.await();
+            }
+
+            final String tenant = turns.removeFirst();
+            final Queue<Runnable> queue = queues.get(tenant);
+            final Runnable task = queue.remove();
+            if (!queue.isEmpty()) {
+                turns.addLast(tenant);
+            }
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            final Runnable task;
+            try {
+                task = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOG.error("Unhandled exception in task: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.p4square.groupsindexer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.p4square.groupsindexer.model.SearchFieldsSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stores the search fields snapshot in a local file, such as in a Lambda container's /tmp.
+ */
+public class FileSearchFieldsStore implements SearchFieldsStore {
+
+    private final Path path;
+    private final ObjectMapper mapper;
+
+    public FileSearchFieldsStore(Path path, ObjectMapper mapper) {
+        this.path = path;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public SearchFieldsSnapshot load() throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        return mapper.readValue(path.toFile(), SearchFieldsSnapshot.class);
+    }
+
+    @Override
+    public void save(SearchFieldsSnapshot snapshot) throws IOException {
+        // Write a temporary file and move it into place so readers never see a partial file.
+        final Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), "search-fields-", ".tmp");
+        try {
+            mapper.writeValue(temp.toFile(), snapshot);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
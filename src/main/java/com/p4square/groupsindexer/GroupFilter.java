@@ -0,0 +1,200 @@
+package com.p4square.groupsindexer;
+
+import com.p4square.ccbapi.model.GroupProfile;
+import com.p4square.ccbapi.model.InteractionType;
+import com.p4square.ccbapi.model.Reference;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * GroupFilter decides which groups are listed in the search index.
+ *
+ * The filter is a chain of rules, compiled once from settings:
+ * <ul>
+ *  <li>GROUP_FILTER_RULES - The rules to apply, in order
+ *      (default "active,public-search-listed,interaction-type,group-type").</li>
+ *  <li>GROUP_FILTER_INTERACTION_TYPES - Interaction types allowed by the interaction-type rule
+ *      (default MEMBERS_INTERACT).</li>
+ *  <li>GROUP_FILTER_GROUP_TYPES - Group types allowed by the group-type rule. Each entry is either a group type id or
+ *      text which the group type's name must contain (default "Community,Growth").</li>
+ * </ul>
+ * Lists are comma separated.
+ *
+ * The group-type rule decides once per group type id and remembers the answer, so names are only scanned the first
+ * time a type is seen. Skipped groups are counted per rule instead of being logged one at a time.
+ */
+public class GroupFilter implements Predicate<GroupProfile> {
+
+    private static final Logger LOG = LogManager.getLogger(GroupFilter.class);
+
+    private static final String DEFAULT_RULES = "active,public-search-listed,interaction-type,group-type";
+    private static final String DEFAULT_INTERACTION_TYPES = "MEMBERS_INTERACT";
+    private static final String DEFAULT_GROUP_TYPES = "Community,Growth";
+
+    private final List<String> ruleNames;
+    private final List<Predicate<GroupProfile>> rules;
+    private final List<LongAdder> skipCounts;
+
+    private GroupFilter(List<String> ruleNames, List<Predicate<GroupProfile>> rules) {
+        this.ruleNames = ruleNames;
+        this.rules = rules;
+        this.skipCounts = new ArrayList<>();
+        for (int i = 0; i < rules.size(); i++) {
+            skipCounts.add(new LongAdder());
+        }
+    }
+
+    /**
+     * Compile a filter from settings.
+     *
+     * @param settings Looks up the settings listed above by name. Returns null for unset settings.
+     * @throws IllegalArgumentException If a rule or interaction type is unknown.
+     */
+    public static GroupFilter fromSettings(Function<String, String> settings) {
+        final List<String> ruleNames = new ArrayList<>();
+        final List<Predicate<GroupProfile>> rules = new ArrayList<>();
+        for (String name : split(settings.apply("GROUP_FILTER_RULES"), DEFAULT_RULES)) {
+            ruleNames.add(name);
+            rules.add(compileRule(name, settings));
+        }
+        return new GroupFilter(Collections.unmodifiableList(ruleNames), rules);
+    }
+
+    /**
+     * @return true if the group should be listed. Otherwise the first rule it failed is counted.
+     */
+    @Override
+    public boolean test(GroupProfile profile) {
+        for (int i = 0; i < rules.size(); i++) {
+            if (!rules.get(i).test(profile)) {
+                skipCounts.get(i).increment();
+                LOG.debug("Skipping group {} ({})", profile.getId(), ruleNames.get(i));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of groups each rule skipped since the last call, by rule name, in rule order.
+     */
+    public Map<String, Long> drainSkipCounts() {
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < rules.size(); i++) {
+            counts.put(ruleNames.get(i), skipCounts.get(i).sumThenReset());
+        }
+        return counts;
+    }
+
+    private static Predicate<GroupProfile> compileRule(String name, Function<String, String> settings) {
+        switch (name) {
+            case "active":
+                return GroupProfile::isActive;
+
+            case "public-search-listed":
+                return GroupProfile::isPublicSearchListed;
+
+            case "interaction-type":
+                final Set<InteractionType> interactionTypes = EnumSet.noneOf(InteractionType.class);
+                for (String type : split(settings.apply("GROUP_FILTER_INTERACTION_TYPES"),
+                        DEFAULT_INTERACTION_TYPES)) {
+                    interactionTypes.add(InteractionType.valueOf(type));
+                }
+                return profile -> interactionTypes.contains(profile.getInteractionType());
+
+            case "group-type":
+                return new GroupTypeRule(split(settings.apply("GROUP_FILTER_GROUP_TYPES"), DEFAULT_GROUP_TYPES));
+
+            default:
+                throw new IllegalArgumentException("Unknown group filter rule: " + name);
+        }
+    }
+
+    private static List<String> split(String value, String defaultValue) {
+        final List<String> items = new ArrayList<>();
+        for (String item : (value != null ? value : defaultValue).split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Allows groups whose type has one of a set of ids or whose type name contains one of a set of strings.
+     */
+    private static class GroupTypeRule implements Predicate<GroupProfile> {
+        private final Set<Integer> ids = new HashSet<>();
+        private final List<String> nameParts = new ArrayList<>();
+        private final ConcurrentMap<Integer, Decision> decisions = new ConcurrentHashMap<>();
+
+        GroupTypeRule(List<String> groupTypes) {
+            for (String groupType : groupTypes) {
+                try {
+                    ids.add(Integer.valueOf(groupType));
+                } catch (NumberFormatException e) {
+                    nameParts.add(groupType);
+                }
+            }
+        }
+
+        @Override
+        public boolean test(GroupProfile profile) {
+            final Reference groupType = profile.getGroupType();
+            if (groupType == null) {
+                return false;
+            }
+
+            // Decisions are cached by id, but a group type can be renamed while the process runs.
+            final String name = groupType.getName();
+            Decision decision = decisions.get(groupType.getId());
+            if (decision == null || !Objects.equals(decision.name, name)) {
+                decision = new Decision(name, decide(groupType.getId(), name));
+                decisions.put(groupType.getId(), decision);
+            }
+            return decision.listed;
+        }
+
+        private boolean decide(int id, String name) {
+            if (ids.contains(id)) {
+                return true;
+            }
+            if (name != null) {
+                for (String part : nameParts) {
+                    if (name.contains(part)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Whether a group type is listed, and the name it was decided for.
+         */
+        private static class Decision {
+            final String name;
+            final boolean listed;
+
+            Decision(String name, boolean listed) {
+                this.name = name;
+                this.listed = listed;
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.p4square.groupsindexer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.p4square.groupsindexer.index.GroupsQueryIndex;
+import com.p4square.groupsindexer.model.GroupsCollection;
+import com.p4square.groupsindexer.output.OutputSink;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * GroupsIndexCache keeps the published {@link GroupsCollection} and its {@link GroupsQueryIndex} in memory.
+ *
+ * The collection is loaded on first use. After that its ETag is checked at most once per interval and the
+ * collection is only downloaded and indexed again when the ETag has changed. If a reload fails the previous
+ * index keeps being served.
+ */
+public class GroupsIndexCache {
+
+    private static final Logger LOG = LogManager.getLogger(GroupsIndexCache.class);
+
+    /**
+     * A loaded collection and its index.
+     */
+    public static class Snapshot {
+        private final String etag;
+        private final GroupsCollection collection;
+        private final GroupsQueryIndex index;
+
+        Snapshot(String etag, GroupsCollection collection, GroupsQueryIndex index) {
+            this.etag = etag;
+            this.collection = collection;
+            this.index = index;
+        }
+
+        /**
+         * @return The ETag of the published collection this snapshot was loaded from.
+         */
+        public String getETag() {
+            return etag;
+        }
+
+        public GroupsCollection getCollection() {
+            return collection;
+        }
+
+        public GroupsQueryIndex getIndex() {
+            return index;
+        }
+    }
+
+    private final OutputSink outputSink;
+    private final String key;
+    private final ObjectMapper mapper;
+    private final long checkIntervalMs;
+
+    private volatile Snapshot snapshot;
+    private volatile long lastCheck;
+
+    /**
+     * @param outputSink Where the collection is published.
+     * @param key The key of the collection.
+     * @param mapper Reads the collection.
+     * @param checkIntervalMs The longest a loaded collection is served without checking for a new one.
+     */
+    public GroupsIndexCache(OutputSink outputSink, String key, ObjectMapper mapper, long checkIntervalMs) {
+        this.outputSink = outputSink;
+        this.key = key;
+        this.mapper = mapper;
+        this.checkIntervalMs = checkIntervalMs;
+    }
+
+    /**
+     * @return The current snapshot.
+     * @throws IOException If nothing has been loaded yet and the collection can't be loaded.
+     */
+    public Snapshot get() throws IOException {
+        final Snapshot current = snapshot;
+        if (current != null && System.currentTimeMillis() - lastCheck < checkIntervalMs) {
+            return current;
+        }
+        return refresh();
+    }
+
+    /**
+     * Check for a new collection on the next call to {@link #get()}, instead of waiting for the interval.
+     */
+    public void expire() {
+        lastCheck = 0;
+    }
+
+    private synchronized Snapshot refresh() throws IOException {
+        // Another thread may have refreshed while this one waited.
+        if (snapshot != null && System.currentTimeMillis() - lastCheck < checkIntervalMs) {
+            return snapshot;
+        }
+
+        try {
+            final String etag = outputSink.getETag(key);
+            if (etag == null) {
+                throw new IOException("No groups data at " + key);
+            }
+            if (snapshot == null || !Objects.equals(etag, snapshot.getETag())) {
+                snapshot = load(etag);
+            }
+
+        } catch (IOException | RuntimeException e) {
+            if (snapshot == null) {
+                throw e;
+            }
+            LOG.warn("Failed to reload groups data. Serving version " + snapshot.getCollection().getVersion() +
+                    ": " + e.getMessage());
+        }
+
+        lastCheck = System.currentTimeMillis();
+        return snapshot;
+    }
+
+    private Snapshot load(String etag) throws IOException {
+        final long start = System.currentTimeMillis();
+        final GroupsCollection collection;
+        try (InputStream in = outputSink.read(key)) {
+            if (in == null) {
+                throw new IOException("No groups data at " + key);
+            }
+            collection = mapper.readValue(in, GroupsCollection.class);
+        }
+
+        final GroupsQueryIndex index = new GroupsQueryIndex(collection);
+        LOG.info("Loaded version " + collection.getVersion() + " (" + index.size() + " groups, ETag " + etag +
+                ") in " + (System.currentTimeMillis() - start) + " ms.");
+        return new Snapshot(etag, collection, index);
+    }
+}
@@ -0,0 +1,357 @@
+package com.p4square.groupsindexer;
+
+import com.p4square.groupsindexer.metrics.MetricsRegistry;
+import com.p4square.groupsindexer.model.ImageManifest;
+import com.p4square.groupsindexer.model.ImageManifestEntry;
+import com.p4square.groupsindexer.output.ObjectInfo;
+import com.p4square.groupsindexer.output.OutputSink;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ImageMirror copies group images into the output sink on a bounded pool of worker threads.
+ *
+ * Each source host is limited to a fixed number of concurrent connections and each image must be
+ * downloaded and uploaded within the configured timeout. Images waiting for a connection to their host wait in a
+ * queue for that host, not on a worker thread, so a busy host never holds workers which are shared with other
+ * work.
+ *
+ * An {@link ImageManifest} remembers the validators and content hash of every image already copied. Images
+ * are fetched conditionally and only written to the sink when their content has changed.
+ */
+public class ImageMirror {
+
+    private static final Logger LOG = LogManager.getLogger(ImageMirror.class);
+
+    private static final String IMAGE_PREFIX = "group-images/";
+    private static final String IMAGE_KEY_PREFIX = IMAGE_PREFIX + "group-";
+
+    /**
+     * The outcome of mirroring a single image.
+     */
+    public enum Status {
+        SUCCEEDED("ImagesSucceeded"),
+        UNCHANGED("ImagesUnchanged"),
+        FAILED("ImagesFailed"),
+        TIMED_OUT("ImagesTimedOut");
+
+        private final String metricName;
+
+        Status(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    private final OutputSink outputSink;
+    private final int connectionsPerHost;
+    private final int timeoutMs;
+    private final MetricsRegistry metrics;
+
+    private final Executor workers;
+    private final ConcurrentMap<String, HostQueue> hosts;
+
+    public ImageMirror(OutputSink outputSink, int workerCount, int connectionsPerHost, int timeoutMs,
+                       MetricsRegistry metrics) {
+        this(outputSink, Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "image-mirror-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        }), connectionsPerHost, timeoutMs, metrics);
+    }
+
+    /**
+     * Create an ImageMirror which copies images on workers, which may be shared with other work.
+     */
+    public ImageMirror(OutputSink outputSink, Executor workers, int connectionsPerHost, int timeoutMs,
+                       MetricsRegistry metrics) {
+        this.outputSink = outputSink;
+        this.connectionsPerHost = connectionsPerHost;
+        this.timeoutMs = timeoutMs;
+        this.metrics = metrics;
+        this.workers = workers;
+        this.hosts = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param groupId The group the image belongs to.
+     * @return The key the group's image is stored under.
+     */
+    public static String getImageKey(int groupId) {
+        return IMAGE_KEY_PREFIX + groupId;
+    }
+
+    /**
+     * Queue an image to be copied to the output sink.
+     *
+     * @param groupId The group the image belongs to.
+     * @param sourceUrl The URL to download the image from.
+     * @param manifest The manifest of previously copied images. It is updated when the copy succeeds.
+     * @return A Future which completes with the outcome of the copy. The Future never completes exceptionally.
+     */
+    public Future<Status> submit(final int groupId, final String sourceUrl, final ImageManifest manifest) {
+        final FutureTask<Status> task = new FutureTask<>(() -> {
+            final long start = System.nanoTime();
+            final Status status = mirror(groupId, sourceUrl, manifest);
+            metrics.recordTime("ImageCopyTime", MetricsRegistry.since(start));
+            metrics.count(status.metricName, 1);
+            return status;
+        });
+
+        final HostQueue host = hosts.computeIfAbsent(getHost(sourceUrl), h -> new HostQueue());
+        if (host.offer(task)) {
+            try {
+                workers.execute(() -> runAndContinue(host, task));
+            } catch (RejectedExecutionException e) {
+                host.finish();
+                throw e;
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Delete every image in the sink which does not belong to a group in the manifest.
+     *
+     * @param manifest The images to keep.
+     * @return The number of images deleted.
+     */
+    public int collectGarbage(ImageManifest manifest) throws IOException {
+        final List<String> staleKeys = new ArrayList<>();
+        for (String key : outputSink.list(IMAGE_PREFIX)) {
+            final Integer groupId = getGroupId(key);
+            if (groupId == null || !manifest.contains(groupId)) {
+                staleKeys.add(key);
+            }
+        }
+
+        outputSink.delete(staleKeys);
+        return staleKeys.size();
+    }
+
+    /**
+     * Stop accepting new images if the workers are an ExecutorService. Images already queued are still copied.
+     */
+    public void shutdown() {
+        if (workers instanceof ExecutorService) {
+            ((ExecutorService) workers).shutdown();
+        }
+    }
+
+    private Status mirror(int groupId, String sourceUrl, ImageManifest manifest) {
+        final long deadline = System.currentTimeMillis() + timeoutMs;
+        final String imageKey = getImageKey(groupId);
+        final ImageManifestEntry previous = manifest.get(groupId);
+
+        InputStream in = null;
+        File spoolFile = null;
+        try {
+            final URL url = new URL(sourceUrl);
+
+            final long downloadStart = System.nanoTime();
+            final URLConnection connection = url.openConnection();
+            connection.setConnectTimeout(timeoutMs);
+            connection.setReadTimeout(timeoutMs);
+            if (previous != null && sourceUrl.equals(previous.getSourceUrl())) {
+                if (previous.getEtag() != null) {
+                    connection.setRequestProperty("If-None-Match", previous.getEtag());
+                }
+                if (previous.getLastModified() != null) {
+                    connection.setRequestProperty("If-Modified-Since", previous.getLastModified());
+                }
+            }
+
+            if (connection instanceof HttpURLConnection &&
+                    ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return Status.UNCHANGED;
+            }
+
+            // Spool the image to disk so it can be compared before uploading without holding it in memory.
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            in = new DigestInputStream(new DeadlineInputStream(connection.getInputStream(), deadline), digest);
+            spoolFile = File.createTempFile("group-image-", ".tmp");
+            final long downloaded = Files.copy(in, spoolFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            metrics.recordTime("ImageDownloadTime", MetricsRegistry.since(downloadStart));
+            metrics.countBytes("ImageDownloadBytes", downloaded);
+            final ImageManifestEntry entry = new ImageManifestEntry(sourceUrl,
+                    connection.getHeaderField("ETag"),
+                    connection.getHeaderField("Last-Modified"),
+                    toHex(digest.digest()));
+
+            if (previous != null && entry.getSha256().equals(previous.getSha256())) {
+                // Same bytes as the copy in the sink. Keep the new validators for next time.
+                manifest.put(groupId, entry);
+                return Status.UNCHANGED;
+            }
+
+            final int remainingMs = (int) Math.max(1, deadline - System.currentTimeMillis());
+            final long uploadStart = System.nanoTime();
+            outputSink.putFile(imageKey, spoolFile,
+                    new ObjectInfo().withContentType(connection.getContentType()), remainingMs);
+            metrics.recordTime("ImageUploadTime", MetricsRegistry.since(uploadStart));
+            metrics.countBytes("ImageUploadBytes", downloaded);
+            manifest.put(groupId, entry);
+            return Status.SUCCEEDED;
+
+        } catch (InterruptedIOException e) {
+            LOG.warn("Timed out copying image for group " + groupId + ": " + e.getMessage());
+            return Status.TIMED_OUT;
+
+        } catch (Exception e) {
+            LOG.error("Failed to upload image for group " + groupId, e);
+            return Status.FAILED;
+
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+            if (spoolFile != null && !spoolFile.delete()) {
+                spoolFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Copy an image, then hand the host's connection to the next image waiting for it.
+     */
+    private void runAndContinue(HostQueue host, Runnable task) {
+        task.run();
+
+        final Runnable next = host.finish();
+        if (next != null) {
+            try {
+                workers.execute(() -> runAndContinue(host, next));
+            } catch (RejectedExecutionException e) {
+                // The workers are shutting down, but images already submitted are still copied.
+                runAndContinue(host, next);
+            }
+        }
+    }
+
+    private static String getHost(String sourceUrl) {
+        try {
+            return new URL(sourceUrl).getHost();
+        } catch (IOException e) {
+            // The copy will fail quickly. It needs no connection limit.
+            return "";
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static Integer getGroupId(String imageKey) {
+        if (!imageKey.startsWith(IMAGE_KEY_PREFIX)) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(imageKey.substring(IMAGE_KEY_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * An InputStream which fails once a deadline has passed, even if the source is still trickling in data.
+     */
+    private static class DeadlineInputStream extends FilterInputStream {
+        private final long deadline;
+
+        DeadlineInputStream(InputStream in, long deadline) {
+            super(in);
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkDeadline();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkDeadline();
+            return super.read(b, off, len);
+        }
+
+        private void checkDeadline() throws InterruptedIOException {
+            if (System.currentTimeMillis() > deadline) {
+                throw new InterruptedIOException("Image transfer deadline exceeded");
+            }
+        }
+    }
+
+    /**
+     * The images copying from, and waiting for, one source host.
+     */
+    private class HostQueue {
+        private final Queue<Runnable> waiting = new ArrayDeque<>();
+        private int active;
+
+        /**
+         * @return true if task may run now, false if it was queued until a connection is free.
+         */
+        synchronized boolean offer(Runnable task) {
+            if (active < connectionsPerHost) {
+                active++;
+                return true;
+            }
+            waiting.add(task);
+            return false;
+        }
+
+        /**
+         * Called when a task finishes.
+         *
+         * @return The next task to run on the finished task's connection, or null if none are waiting.
+         */
+        synchronized Runnable finish() {
+            final Runnable next = waiting.poll();
+            if (next == null) {
+                active--;
+            }
+            return next;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.p4square.groupsindexer;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.encoder.BrotliOutputStream;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.p4square.groupsindexer.metrics.MetricsRegistry;
+import com.p4square.groupsindexer.model.PublishLedger;
+import com.p4square.groupsindexer.model.Views;
+import com.p4square.groupsindexer.output.ObjectInfo;
+import com.p4square.groupsindexer.output.OutputSink;
+import com.p4square.groupsindexer.output.SinkOutputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * JsonPublisher writes public JSON documents to the output sink. Other Jackson encodings, such as CBOR, can be
+ * published the same way with their own ObjectMapper.
+ *
+ * Each document is written as-is, gzip compressed to key + ".gz", and brotli compressed to key + ".br" when the
+ * brotli native library is available. All variants are written in a single streaming pass with content type,
+ * encoding and cache metadata.
+ *
+ * A document is only written when its content hash differs from the hash recorded in the {@link PublishLedger}.
+ * The hash is computed with the {@link Views.Content} view, so a new lastUpdated time alone does not cause a
+ * rewrite.
+ */
+public class JsonPublisher {
+
+    private static final Logger LOG = LogManager.getLogger(JsonPublisher.class);
+
+    public static final String CONTENT_TYPE = "application/json; charset=utf-8";
+    public static final String HASH_METADATA = "content-sha256";
+
+    private static final boolean BROTLI_AVAILABLE = loadBrotli();
+
+    /**
+     * The content hash and uncompressed length of a document.
+     */
+    public static class Fingerprint {
+        private final String sha256;
+        private final long length;
+
+        Fingerprint(String sha256, long length) {
+            this.sha256 = sha256;
+            this.length = length;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * A document serialized once, so the bytes which were hashed are the bytes which are published.
+     */
+    public static class SerializedDocument {
+        private final byte[] content;
+        private final Fingerprint fingerprint;
+
+        SerializedDocument(byte[] content, Fingerprint fingerprint) {
+            this.content = content;
+            this.fingerprint = fingerprint;
+        }
+
+        public Fingerprint getFingerprint() {
+            return fingerprint;
+        }
+    }
+
+    /**
+     * Brotli quality for most documents. The highest quality is many times slower for a few percent smaller output,
+     * so it is only used for documents large enough for the saving to matter, such as the groups data.
+     */
+    private static final int BROTLI_QUALITY = 5;
+    private static final int LARGE_DOCUMENT_BROTLI_QUALITY = 11;
+    private static final long LARGE_DOCUMENT_BYTES = 256 * 1024;
+
+    private final OutputSink outputSink;
+    private final ObjectMapper mapper;
+    private final String cacheControl;
+    private final PublishLedger ledger;
+    private final MetricsRegistry metrics;
+
+    public JsonPublisher(OutputSink outputSink, ObjectMapper mapper, String cacheControl, PublishLedger ledger,
+                         MetricsRegistry metrics) {
+        this.outputSink = outputSink;
+        this.mapper = mapper;
+        this.cacheControl = cacheControl;
+        this.ledger = ledger;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Publish value to key and its compressed variants, unless the same content is already published.
+     *
+     * @return true if the document was written, false if it was unchanged.
+     */
+    public boolean publish(String key, Object value) throws IOException {
+        return publish(key, value, mapper, CONTENT_TYPE);
+    }
+
+    /**
+     * Publish value encoded by another mapper, unless the same content is already published.
+     *
+     * @param key The key to write.
+     * @param value The document.
+     * @param encoder The mapper to write the document with.
+     * @param contentType The encoding's content type.
+     * @return true if the document was written, false if it was unchanged.
+     */
+    public boolean publish(String key, Object value, ObjectMapper encoder, String contentType) throws IOException {
+        return publish(key, value, encoder, contentType, fingerprint(value));
+    }
+
+    /**
+     * Publish value, whose fingerprint has already been computed, unless the same content is already published.
+     *
+     * @param fingerprint The {@link #fingerprint(Object)} of value.
+     * @return true if the document was written, false if it was unchanged.
+     */
+    public boolean publish(String key, Object value, Fingerprint fingerprint) throws IOException {
+        return publish(key, value, mapper, CONTENT_TYPE, fingerprint);
+    }
+
+    /**
+     * Publish a document {@link #serialize(Object) serialized} earlier, unless the same content is already
+     * published. The document is not serialized again.
+     *
+     * @return true if the document was written, false if it was unchanged.
+     */
+    public boolean publish(String key, SerializedDocument document) throws IOException {
+        return publish(key, CONTENT_TYPE, document.fingerprint, out -> out.write(document.content));
+    }
+
+    private boolean publish(String key, Object value, ObjectMapper encoder, String contentType,
+                            Fingerprint fingerprint) throws IOException {
+        return publish(key, contentType, fingerprint, out -> {
+            final JsonGenerator generator = encoder.getFactory().createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            encoder.writeValue(generator, value);
+            generator.close();
+        });
+    }
+
+    private boolean publish(String key, String contentType, Fingerprint fingerprint, DocumentWriter writer)
+            throws IOException {
+        final String hash = fingerprint.getSha256();
+        if (hash.equals(ledger.get(key))) {
+            LOG.debug("Skipping unchanged " + key);
+            metrics.count("DocumentsUnchanged", 1);
+            return false;
+        }
+
+        final long publishStart = System.nanoTime();
+        final List<SinkOutputStream> uploads = new ArrayList<>();
+        final TeeOutputStream tee;
+        try {
+            final List<OutputStream> variants = new ArrayList<>();
+            variants.add(open(key, contentType, null, hash, uploads));
+            variants.add(new GZIPOutputStream(open(key + ".gz", contentType, "gzip", hash, uploads), 64 * 1024));
+            if (BROTLI_AVAILABLE) {
+                variants.add(new BrotliOutputStream(open(key + ".br", contentType, "br", hash, uploads),
+                        new Encoder.Parameters().setQuality(getBrotliQuality(fingerprint))));
+            }
+
+            tee = new TeeOutputStream(variants);
+            writer.writeTo(tee);
+
+            // Closing each variant finishes its compressor and then its upload.
+            for (OutputStream variant : variants) {
+                variant.close();
+            }
+
+        } catch (IOException | RuntimeException e) {
+            metrics.count("PublishErrors", 1);
+            for (SinkOutputStream upload : uploads) {
+                upload.abort();
+            }
+            throw e;
+        }
+
+        metrics.recordTime("PublishTime", MetricsRegistry.since(publishStart));
+        metrics.count("DocumentsPublished", 1);
+        metrics.countBytes("PublishedBytes", tee.count);
+        ledger.put(key, hash);
+        return true;
+    }
+
+    /**
+     * Delete a published document and its compressed variants.
+     */
+    public void unpublish(String key) throws IOException {
+        outputSink.delete(Arrays.asList(key, key + ".gz", key + ".br"));
+        ledger.remove(key);
+        metrics.count("DocumentsDeleted", 1);
+    }
+
+    /**
+     * @return The keys of every published document under prefix.
+     */
+    public Set<String> getPublishedKeys(String prefix) {
+        final Set<String> keys = new HashSet<>();
+        for (String key : ledger.getHashes().keySet()) {
+            if (key.startsWith(prefix)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @return The hex encoded SHA-256 of value's content, ignoring timestamps.
+     */
+    public String hash(Object value) throws IOException {
+        return fingerprint(value).getSha256();
+    }
+
+    /**
+     * @return The hash and length of value's JSON content, ignoring timestamps.
+     */
+    public Fingerprint fingerprint(Object value) throws IOException {
+        final long start = System.nanoTime();
+        final MessageDigest digest = newDigest();
+
+        final CountingOutputStream counter = new CountingOutputStream();
+        try (OutputStream out = new DigestOutputStream(counter, digest)) {
+            mapper.writerWithView(Views.Content.class).writeValue(out, value);
+        }
+
+        metrics.recordTime("SerializeTime", MetricsRegistry.since(start));
+        return new Fingerprint(toHex(digest.digest()), counter.count);
+    }
+
+    /**
+     * Serialize value into memory and fingerprint it in the same pass, so it can be published without being
+     * serialized again.
+     *
+     * Only for documents without {@link Views.Timestamps} or other properties outside the {@link Views.Content}
+     * view, since those are left out of the published bytes too.
+     */
+    public SerializedDocument serialize(Object value) throws IOException {
+        final long start = System.nanoTime();
+        final MessageDigest digest = newDigest();
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (OutputStream out = new DigestOutputStream(buffer, digest)) {
+            mapper.writerWithView(Views.Content.class).writeValue(out, value);
+        }
+
+        metrics.recordTime("SerializeTime", MetricsRegistry.since(start));
+        final byte[] content = buffer.toByteArray();
+        return new SerializedDocument(content, new Fingerprint(toHex(digest.digest()), content.length));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static int getBrotliQuality(Fingerprint fingerprint) {
+        return fingerprint.getLength() >= LARGE_DOCUMENT_BYTES ? LARGE_DOCUMENT_BROTLI_QUALITY : BROTLI_QUALITY;
+    }
+
+    private SinkOutputStream open(String key, String contentType, String contentEncoding, String hash,
+                                  List<SinkOutputStream> uploads) throws IOException {
+        final ObjectInfo info = new ObjectInfo()
+                .withContentType(contentType)
+                .withCacheControl(cacheControl)
+                .withContentEncoding(contentEncoding)
+                .withUserMetadata(HASH_METADATA, hash);
+
+        final SinkOutputStream upload = outputSink.openStream(key, info);
+        uploads.add(upload);
+        return upload;
+    }
+
+    private static boolean loadBrotli() {
+        try {
+            if (Brotli4jLoader.isAvailable()) {
+                return true;
+            }
+            LOG.warn("Brotli is unavailable. Only gzip variants will be published.",
+                    Brotli4jLoader.getUnavailabilityCause());
+        } catch (Throwable e) {
+            LOG.warn("Brotli is unavailable. Only gzip variants will be published.", e);
+        }
+        return false;
+    }
+
+    /**
+     * Writes a document's content to the variants being uploaded.
+     */
+    private interface DocumentWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes everything to several OutputStreams and counts the bytes written.
+     */
+    private static class TeeOutputStream extends OutputStream {
+        private final List<OutputStream> outputs;
+        long count;
+
+        TeeOutputStream(List<OutputStream> outputs) {
+            this.outputs = outputs;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            for (OutputStream out : outputs) {
+                out.write(b);
+            }
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            for (OutputStream out : outputs) {
+                out.write(b, off, len);
+            }
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            for (OutputStream out : outputs) {
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Counts and discards everything.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
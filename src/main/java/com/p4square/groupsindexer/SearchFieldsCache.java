@@ -1,65 +1,291 @@
 package com.p4square.groupsindexer;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.p4square.ccbapi.CCBAPI;
 import com.p4square.ccbapi.model.*;
 import com.p4square.groupsindexer.model.SearchField;
+import com.p4square.groupsindexer.model.SearchFieldsSnapshot;
 import com.p4square.groupsindexer.model.StringPair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
+/**
+ * SearchFieldsCache caches the search fields built from CCB's custom field labels and lookup tables.
+ *
+ * A value older than the refresh interval is returned immediately while a refresh runs in the background, until
+ * it reaches the staleness ceiling. Past the ceiling the caller waits for the refresh, and the old value is only
+ * returned if the refresh fails. The lookup tables are fetched concurrently. A failed refresh keeps the last good
+ * value.
+ *
+ * The cache is backed by zero or more {@link SearchFieldsStore}s. On construction the cache is warmed from the
+ * first store with a usable snapshot, and every successful refresh is written back to all stores. This lets a
+ * cold start serve fields immediately, and keeps serving them when CCB is slow or failing.
+ */
 public class SearchFieldsCache {
     private static final long REFRESH_INTERVAL_MS = 15 * 60 * 1000;
+    private static final Duration DEFAULT_MAX_STALENESS = Duration.ofHours(1);
+    private static final int LOOKUP_THREADS = 4;
+    private static final Duration MAX_PERSISTED_AGE = Duration.ofDays(7);
 
     private static final Logger LOG = LogManager.getLogger(SearchFieldsCache.class);
 
+    private static final List<LookupTableType> LOOKUP_TYPES = Arrays.asList(
+            LookupTableType.AREA,
+            LookupTableType.MEET_DAY,
+            LookupTableType.UDF_GRP_PULLDOWN_1,
+            LookupTableType.UDF_GRP_PULLDOWN_2,
+            LookupTableType.UDF_GRP_PULLDOWN_3);
+
     private final CCBAPI ccbClient;
+    private final Executor executor;
+    private final List<SearchFieldsStore> stores;
+    private final long maxStaleMs;
+
+    private volatile List<SearchField> cachedFields;
+    private volatile long lastRefresh;
+    private final AtomicReference<CompletableFuture<List<SearchField>>> refreshInFlight;
 
-    private List<SearchField> cachedFields;
-    private long lastRefresh;
+    private final AtomicLong hits;
+    private final AtomicLong staleHits;
+    private final AtomicLong misses;
+    private final AtomicLong refreshes;
+    private final AtomicLong refreshFailures;
+    private volatile long lastRefreshLatencyMs;
 
     public SearchFieldsCache(CCBAPI ccbClient) {
+        this(ccbClient, Collections.emptyList(), DEFAULT_MAX_STALENESS);
+    }
+
+    public SearchFieldsCache(CCBAPI ccbClient, List<SearchFieldsStore> stores, Duration maxStaleness) {
+        this(ccbClient, Executors.newFixedThreadPool(LOOKUP_THREADS, new DaemonThreadFactory()), stores,
+                maxStaleness);
+    }
+
+    /**
+     * @param ccbClient The CCB API client.
+     * @param executor Runs the CCB lookups.
+     * @param stores Persisted copies of the fields, checked on construction and updated after each refresh.
+     * @param maxStaleness The oldest fields returned without waiting for a refresh. Older fields are only
+     *                     returned if they can't be refreshed.
+     */
+    public SearchFieldsCache(CCBAPI ccbClient, Executor executor, List<SearchFieldsStore> stores,
+                             Duration maxStaleness) {
         this.ccbClient = ccbClient;
+        this.executor = executor;
+        this.stores = stores;
+        this.maxStaleMs = maxStaleness.toMillis();
+        this.refreshInFlight = new AtomicReference<>();
+        this.hits = new AtomicLong();
+        this.staleHits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.refreshes = new AtomicLong();
+        this.refreshFailures = new AtomicLong();
+
+        warm();
     }
 
-    public synchronized List<SearchField> getSearchFields() {
-        if (System.currentTimeMillis() - lastRefresh < REFRESH_INTERVAL_MS) {
-            LOG.debug("Using cached CCB fields");
-            return cachedFields;
+    /**
+     * @return The search fields, or null if they have never been fetched successfully.
+     */
+    public List<SearchField> getSearchFields() {
+        final List<SearchField> fields = cachedFields;
+        final long fetchedAt = lastRefresh;
+        if (fields != null) {
+            final long age = System.currentTimeMillis() - fetchedAt;
+            if (age < REFRESH_INTERVAL_MS) {
+                LOG.debug("Using cached CCB fields");
+                hits.incrementAndGet();
+                return fields;
+            } else if (age < maxStaleMs) {
+                LOG.debug("Using stale CCB fields while refreshing");
+                staleHits.incrementAndGet();
+                refreshAsync();
+                return fields;
+            }
         }
 
+        // Nothing to serve yet, or too old to serve without trying CCB. Wait for the refresh.
+        misses.incrementAndGet();
         try {
-            LOG.info("Fetching fields from CCB");
+            return refreshAsync().join();
+        } catch (CompletionException e) {
+            if (fields != null) {
+                LOG.warn("Using CCB fields fetched at " + Instant.ofEpochMilli(fetchedAt) +
+                        " because they could not be refreshed.");
+            }
+            return cachedFields;
+        }
+    }
+
+    /**
+     * @return A snapshot of the cache's counters.
+     */
+    public Stats getStats() {
+        return new Stats(hits.get(), staleHits.get(), misses.get(), refreshes.get(), refreshFailures.get(),
+                lastRefreshLatencyMs);
+    }
+
+    /**
+     * Load the freshest usable snapshot from the stores and start a refresh if it is stale.
+     */
+    private void warm() {
+        // Another container may have refreshed a shared store since this one's local copy was written.
+        SearchFieldsSnapshot freshest = null;
+        SearchFieldsStore freshestStore = null;
+        for (SearchFieldsStore store : stores) {
+            try {
+                final SearchFieldsSnapshot snapshot = store.load();
+                if (snapshot != null &&
+                        snapshot.getVersion() == SearchFieldsSnapshot.CURRENT_VERSION &&
+                        snapshot.getFetchedAt() != null &&
+                        snapshot.getSearchFields() != null &&
+                        snapshot.getFetchedAt().plus(MAX_PERSISTED_AGE).isAfter(Instant.now()) &&
+                        (freshest == null || snapshot.getFetchedAt().isAfter(freshest.getFetchedAt()))) {
+                    freshest = snapshot;
+                    freshestStore = store;
+                }
+            } catch (Exception e) {
+                LOG.warn("Failed to load CCB fields from " + store.getClass().getSimpleName() + ": " +
+                        e.getMessage());
+            }
+        }
+
+        if (freshest != null) {
+            LOG.info("Loaded CCB fields fetched at " + freshest.getFetchedAt() + " from " +
+                    freshestStore.getClass().getSimpleName());
+            cachedFields = Collections.unmodifiableList(freshest.getSearchFields());
+            lastRefresh = freshest.getFetchedAt().toEpochMilli();
+        }
+
+        if (cachedFields == null || System.currentTimeMillis() - lastRefresh >= REFRESH_INTERVAL_MS) {
+            refreshAsync();
+        }
+    }
+
+    /**
+     * Write fields to every store.
+     */
+    private void persist(List<SearchField> fields, long fetchedAt) {
+        final SearchFieldsSnapshot snapshot = new SearchFieldsSnapshot(Instant.ofEpochMilli(fetchedAt), fields);
+        for (SearchFieldsStore store : stores) {
+            try {
+                store.save(snapshot);
+            } catch (Exception e) {
+                LOG.warn("Failed to save CCB fields to " + store.getClass().getSimpleName() + ": " +
+                        e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Start a refresh unless one is already running.
+     *
+     * @return A future for the running refresh.
+     */
+    private CompletableFuture<List<SearchField>> refreshAsync() {
+        while (true) {
+            final CompletableFuture<List<SearchField>> running = refreshInFlight.get();
+            if (running != null) {
+                return running;
+            }
+
+            final CompletableFuture<List<SearchField>> refresh = new CompletableFuture<>();
+            if (refreshInFlight.compareAndSet(null, refresh)) {
+                final long start = System.currentTimeMillis();
+                fetchFields().whenComplete((fields, error) -> {
+                    lastRefreshLatencyMs = System.currentTimeMillis() - start;
+                    if (error == null) {
+                        final long fetchedAt = System.currentTimeMillis();
+                        cachedFields = fields;
+                        lastRefresh = fetchedAt;
+                        refreshes.incrementAndGet();
+                        if (!stores.isEmpty()) {
+                            executor.execute(() -> persist(fields, fetchedAt));
+                        }
+                    } else {
+                        LOG.error("Failed to fetch fields from CCB: " + error.getMessage());
+                        refreshFailures.incrementAndGet();
+                    }
+                    refreshInFlight.set(null);
+
+                    if (error == null) {
+                        refresh.complete(fields);
+                    } else {
+                        refresh.completeExceptionally(error);
+                    }
+                });
+                return refresh;
+            }
+        }
+    }
 
-            cachedFields = new ArrayList<>();
-            final GetCustomFieldLabelsResponse labels = ccbClient.getCustomFieldLabels();
+    private CompletableFuture<List<SearchField>> fetchFields() {
+        LOG.info("Fetching fields from CCB");
 
-            cachedFields.add(new SearchField("area", "Campus", getValues(LookupTableType.AREA)));
-            cachedFields.add(new SearchField("meetingDay", "Day", getValues(LookupTableType.MEET_DAY)));
+        final CompletableFuture<GetCustomFieldLabelsResponse> labelsFuture =
+                callAsync(ccbClient::getCustomFieldLabels);
 
-            for (final CustomField field : labels.getCustomFields()) {
+        final Map<LookupTableType, CompletableFuture<List<StringPair>>> valueFutures =
+                new EnumMap<>(LookupTableType.class);
+        for (LookupTableType type : LOOKUP_TYPES) {
+            valueFutures.put(type, callAsync(() -> getValues(type)));
+        }
+
+        // Every lookup table is requested up front, even custom fields which may not be in use. Wait for all of
+        // them to finish, but only fail if a table which is actually needed failed.
+        final List<CompletableFuture<?>> all = new ArrayList<>();
+        for (CompletableFuture<List<StringPair>> future : valueFutures.values()) {
+            all.add(future.handle((values, error) -> null));
+        }
+        all.add(labelsFuture);
+
+        return CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            final List<SearchField> fields = new ArrayList<>();
+            fields.add(new SearchField("area", "Campus", valueFutures.get(LookupTableType.AREA).join()));
+            fields.add(new SearchField("meetingDay", "Day", valueFutures.get(LookupTableType.MEET_DAY).join()));
+
+            for (final CustomField field : labelsFuture.join().getCustomFields()) {
                 final LookupTableType type = getTypeFromString(field.getName());
                 if (type != null) {
-                    cachedFields.add(new SearchField(getSearchFieldIdForType(type), field.getLabel(), getValues(type)));
+                    fields.add(new SearchField(getSearchFieldIdForType(type), field.getLabel(),
+                            valueFutures.get(type).join()));
                 }
             }
 
-            cachedFields.add(new SearchField("childcare", "Childcare",
+            fields.add(new SearchField("childcare", "Childcare",
                     Arrays.asList(StringPair.of("true", "Yes"), StringPair.of("false", "No"))));
 
-            lastRefresh = System.currentTimeMillis();
-            return cachedFields;
+            return Collections.unmodifiableList(fields);
+        });
+    }
 
-        } catch (Exception e) {
-            LOG.error(e.getMessage());
-            return null;
-        }
+    private <T> CompletableFuture<T> callAsync(Callable<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
     }
 
     private LookupTableType getTypeFromString(String name) {
@@ -97,4 +323,81 @@ public class SearchFieldsCache {
                 .map(entry -> StringPair.of(String.valueOf(entry.getId()), entry.getName()))
                 .collect(Collectors.toList());
     }
+
+    /**
+     * Counters describing how the cache has been used.
+     */
+    public static class Stats {
+        private final long hits;
+        private final long staleHits;
+        private final long misses;
+        private final long refreshes;
+        private final long refreshFailures;
+        private final long lastRefreshLatencyMs;
+
+        Stats(long hits, long staleHits, long misses, long refreshes, long refreshFailures,
+              long lastRefreshLatencyMs) {
+            this.hits = hits;
+            this.staleHits = staleHits;
+            this.misses = misses;
+            this.refreshes = refreshes;
+            this.refreshFailures = refreshFailures;
+            this.lastRefreshLatencyMs = lastRefreshLatencyMs;
+        }
+
+        /**
+         * @return Requests answered with a fresh value.
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return Requests answered with a stale value while a refresh ran.
+         */
+        public long getStaleHits() {
+            return staleHits;
+        }
+
+        /**
+         * @return Requests which had to wait for a refresh because nothing was cached or the cached value was
+         *         past the staleness ceiling.
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getRefreshes() {
+            return refreshes;
+        }
+
+        public long getRefreshFailures() {
+            return refreshFailures;
+        }
+
+        public long getLastRefreshLatencyMs() {
+            return lastRefreshLatencyMs;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits +
+                    ", staleHits=" + staleHits +
+                    ", misses=" + misses +
+                    ", refreshes=" + refreshes +
+                    ", refreshFailures=" + refreshFailures +
+                    ", lastRefreshLatencyMs=" + lastRefreshLatencyMs;
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread t = new Thread(r, "search-fields-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
 }
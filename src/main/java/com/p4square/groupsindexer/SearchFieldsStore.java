@@ -0,0 +1,21 @@
+package com.p4square.groupsindexer;
+
+import com.p4square.groupsindexer.model.SearchFieldsSnapshot;
+
+import java.io.IOException;
+
+/**
+ * A persistent tier beneath the {@link SearchFieldsCache}.
+ */
+public interface SearchFieldsStore {
+
+    /**
+     * @return The stored snapshot, or null if there is none.
+     */
+    SearchFieldsSnapshot load() throws IOException;
+
+    /**
+     * Replace the stored snapshot.
+     */
+    void save(SearchFieldsSnapshot snapshot) throws IOException;
+}
@@ -0,0 +1,239 @@
+package com.p4square.groupsindexer;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.p4square.groupsindexer.index.GroupsQueryIndex;
+import com.p4square.groupsindexer.model.ErrorResponse;
+import com.p4square.groupsindexer.model.GroupListing;
+import com.p4square.groupsindexer.model.GroupListingAdapter;
+import com.p4square.groupsindexer.model.GroupSearchDocument;
+import com.p4square.groupsindexer.model.GroupsQueryResponse;
+import com.p4square.groupsindexer.output.OutputSink;
+import com.p4square.groupsindexer.output.S3OutputSink;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * SearchGroups is a lambda which answers group searches from an in-memory index of the published groups data.
+ *
+ * The groups data is loaded once per container and reloaded only when its ETag changes. See
+ * {@link GroupsIndexCache}.
+ *
+ * Query string parameters:
+ * <ul>
+ *  <li>Any search field id, such as area or meetingDay - Comma separated value keys. A group matches if it has
+ *      any of the values. Different fields must all match.</li>
+ *  <li>min-open-spots - Only groups with at least this many open spots. 1 for groups with room to join.</li>
+ *  <li>sort - name, open-spots or members, with a leading '-' to reverse (default name).</li>
+ *  <li>near - A point as "latitude,longitude". Groups nearest the point come first and sort is ignored. Groups
+ *      without a location come last.</li>
+ *  <li>page - The page to return, starting from 1 (default 1).</li>
+ *  <li>per-page - Groups per page (default 20).</li>
+ * </ul>
+ * Other parameters, such as cache busters and campaign tags, are ignored.
+ *
+ * Required (custom) environment variables:
+ * <ul>
+ *  <li>OUTPUT_BUCKET</li>
+ * </ul>
+ *
+ * Optional environment variables:
+ * <ul>
+ *  <li>RELOAD_CHECK_INTERVAL_MS - How often to check for new groups data (default 30000).</li>
+ *  <li>MAX_PER_PAGE - Largest page size a request may ask for (default 100).</li>
+ *  <li>LISTING_SNIPPET_LENGTH - Longest description snippet in the results, 0 for none (default 160).</li>
+ * </ul>
+ */
+public class SearchGroups implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private static final Logger LOG = LogManager.getLogger(SearchGroups.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    static {
+        MAPPER.registerModule(new JavaTimeModule());
+        MAPPER.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        MAPPER.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    private static final String MIN_OPEN_SPOTS = "min-open-spots";
+    private static final String SORT = "sort";
+    private static final String NEAR = "near";
+    private static final String PAGE = "page";
+    private static final String PER_PAGE = "per-page";
+
+    private final GroupsIndexCache indexCache;
+    private final GroupListingAdapter listingAdapter;
+    private final int maxPerPage;
+
+    public SearchGroups() {
+        this(new S3OutputSink(AmazonS3ClientBuilder.defaultClient(), System.getenv("OUTPUT_BUCKET")),
+                System::getenv);
+    }
+
+    /**
+     * @param outputSink Where the groups data is published.
+     * @param settings Looks up the optional settings listed above by name. Returns null for unset settings.
+     */
+    public SearchGroups(OutputSink outputSink, Function<String, String> settings) {
+        this(createIndexCache(outputSink, settings), settings);
+    }
+
+    /**
+     * @param indexCache Holds the groups data to search.
+     * @param settings Looks up the optional settings listed above by name. Returns null for unset settings.
+     */
+    public SearchGroups(GroupsIndexCache indexCache, Function<String, String> settings) {
+        this.indexCache = indexCache;
+        listingAdapter = new GroupListingAdapter(SyncGroups.getIntSetting(settings, "LISTING_SNIPPET_LENGTH", 160));
+        maxPerPage = SyncGroups.getIntSetting(settings, "MAX_PER_PAGE", 100);
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent event, Context context) {
+        final Map<String, String> parameters = event.getQueryStringParameters() != null
+                ? event.getQueryStringParameters()
+                : Collections.emptyMap();
+
+        try {
+            return respond(200, search(parameters));
+
+        } catch (IllegalArgumentException e) {
+            return respond(400, new ErrorResponse(e.getMessage()));
+
+        } catch (IOException e) {
+            LOG.error("Failed to load groups data: " + e.getMessage(), e);
+            return respond(503, new ErrorResponse("Groups data is unavailable."));
+        }
+    }
+
+    /**
+     * Answer a search.
+     *
+     * @param parameters The query string parameters listed above.
+     * @return The matching groups.
+     * @throws IllegalArgumentException If a parameter is invalid.
+     * @throws IOException If the groups data can't be loaded.
+     */
+    public GroupsQueryResponse search(Map<String, String> parameters) throws IOException {
+        final GroupsIndexCache.Snapshot snapshot = indexCache.get();
+        final GroupsQueryIndex.Query query = new GroupsQueryIndex.Query();
+        int page = 1;
+        int perPage = Math.min(20, maxPerPage);
+
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            switch (parameter.getKey()) {
+                case MIN_OPEN_SPOTS:
+                    query.withMinOpenSpots(parseInt(parameter));
+                    break;
+                case SORT:
+                    final String sort = parameter.getValue();
+                    final boolean reverse = sort.startsWith("-");
+                    try {
+                        query.withSort(GroupsQueryIndex.Sort.fromParameter(reverse ? sort.substring(1) : sort),
+                                reverse);
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Unknown sort: " + sort);
+                    }
+                    break;
+                case NEAR:
+                    final double[] point = parsePoint(parameter);
+                    query.withNear(point[0], point[1]);
+                    break;
+                case PAGE:
+                    page = Math.max(1, parseInt(parameter));
+                    break;
+                case PER_PAGE:
+                    perPage = Math.min(maxPerPage, Math.max(0, parseInt(parameter)));
+                    break;
+                default:
+                    if (snapshot.getIndex().isSearchField(parameter.getKey())) {
+                        query.withFilter(parameter.getKey(), Arrays.asList(parameter.getValue().split(",")));
+                    }
+            }
+        }
+
+        final GroupsQueryIndex.Result result = snapshot.getIndex().search(query.withPage(page).withPerPage(perPage));
+        final List<GroupListing> listings = new ArrayList<>(result.getGroups().size());
+        for (GroupSearchDocument document : result.getGroups()) {
+            listings.add(listingAdapter.apply(document));
+        }
+
+        final GroupsQueryResponse response = new GroupsQueryResponse();
+        response.setVersion(snapshot.getCollection().getVersion());
+        response.setLastUpdated(snapshot.getCollection().getLastUpdated());
+        response.setTotal(result.getTotal());
+        response.setPage(page);
+        response.setPerPage(perPage);
+        response.setGroups(listings);
+        response.setFacets(result.getFacetCounts());
+        return response;
+    }
+
+    /**
+     * @return A cache of the groups data published to outputSink, configured by settings.
+     */
+    public static GroupsIndexCache createIndexCache(OutputSink outputSink, Function<String, String> settings) {
+        return new GroupsIndexCache(outputSink, SyncGroups.GROUPS_DATA_KEY, MAPPER,
+                SyncGroups.getIntSetting(settings, "RELOAD_CHECK_INTERVAL_MS", 30000));
+    }
+
+    private static APIGatewayProxyResponseEvent respond(int status, Object body) {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", JsonPublisher.CONTENT_TYPE);
+        headers.put("Cache-Control", status == 200 ? "public, max-age=60" : "no-store");
+
+        final APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent()
+                .withStatusCode(status)
+                .withHeaders(headers);
+        try {
+            return response.withBody(MAPPER.writeValueAsString(body));
+        } catch (JsonProcessingException e) {
+            LOG.error("Failed to serialize response: " + e.getMessage(), e);
+            return response.withStatusCode(500).withBody("{\"error\":\"Internal error.\"}");
+        }
+    }
+
+    private static int parseInt(Map.Entry<String, String> parameter) {
+        try {
+            return Integer.parseInt(parameter.getValue());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(parameter.getKey() + " must be a number.");
+        }
+    }
+
+    /**
+     * @return The latitude and longitude of a "latitude,longitude" parameter.
+     */
+    private static double[] parsePoint(Map.Entry<String, String> parameter) {
+        final String[] parts = parameter.getValue().split(",");
+        try {
+            if (parts.length == 2) {
+                final double latitude = Double.parseDouble(parts[0].trim());
+                final double longitude = Double.parseDouble(parts[1].trim());
+                if (Math.abs(latitude) <= 90 && Math.abs(longitude) <= 180) {
+                    return new double[] { latitude, longitude };
+                }
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException(parameter.getKey() + " must be a latitude and longitude, such as " +
+                "\"47.19,-122.29\".");
+    }
+}
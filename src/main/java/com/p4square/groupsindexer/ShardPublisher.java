@@ -0,0 +1,243 @@
+package com.p4square.groupsindexer;
+
+import com.p4square.groupsindexer.index.FacetIndexBuilder;
+import com.p4square.groupsindexer.model.GroupSearchDocument;
+import com.p4square.groupsindexer.model.GroupsCollection;
+import com.p4square.groupsindexer.model.GroupsShard;
+import com.p4square.groupsindexer.model.Reference;
+import com.p4square.groupsindexer.model.ShardEntry;
+import com.p4square.groupsindexer.model.ShardManifest;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * ShardPublisher partitions the groups by campus or area and publishes each partition as a {@link GroupsShard}.
+ *
+ * Shards are serialized and written concurrently on a small pool of worker threads. Unchanged shards are skipped
+ * by the {@link JsonPublisher}'s ledger. The {@link ShardManifest} is published after every shard, so it never
+ * points at a shard which has not been written.
+ */
+public class ShardPublisher {
+
+    private static final Logger LOG = LogManager.getLogger(ShardPublisher.class);
+
+    public static final String MANIFEST_KEY = "data/shards/manifest.json";
+    private static final String SHARD_PREFIX = "data/shards/";
+    private static final String NO_SHARD_ID = "none";
+
+    private static final FacetIndexBuilder FACET_INDEX_BUILDER = new FacetIndexBuilder();
+
+    /**
+     * The search document property groups are partitioned by.
+     */
+    public enum ShardBy {
+        CAMPUS(GroupSearchDocument::getCampus),
+        AREA(GroupSearchDocument::getArea);
+
+        private final Function<GroupSearchDocument, Reference> property;
+
+        ShardBy(Function<GroupSearchDocument, Reference> property) {
+            this.property = property;
+        }
+
+        /**
+         * @param value A setting value, such as "campus".
+         * @return The matching ShardBy, or null if value is null or empty.
+         */
+        public static ShardBy fromSetting(String value) {
+            if (value == null || value.isEmpty()) {
+                return null;
+            }
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+
+        public String getName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final ShardBy shardBy;
+    private final String baseUrl;
+    private final Executor workers;
+
+    /**
+     * @param shardBy The property to partition by.
+     * @param baseUrl Prefix for urls in the manifest.
+     * @param workerCount The number of shards to publish concurrently.
+     */
+    public ShardPublisher(ShardBy shardBy, String baseUrl, int workerCount) {
+        this(shardBy, baseUrl, Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "shard-publisher-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        }));
+    }
+
+    /**
+     * @param shardBy The property to partition by.
+     * @param baseUrl Prefix for urls in the manifest.
+     * @param workers Publishes the shards. May be shared with other work.
+     */
+    public ShardPublisher(ShardBy shardBy, String baseUrl, Executor workers) {
+        this.shardBy = shardBy;
+        this.baseUrl = baseUrl;
+        this.workers = workers;
+    }
+
+    /**
+     * Publish a shard for each campus or area in collection and the manifest. Shards which are no longer needed
+     * are deleted.
+     *
+     * @param publisher Publishes the shards and manifest.
+     * @param collection The groups to partition.
+     * @return The number of documents written or deleted.
+     */
+    public int publish(JsonPublisher publisher, GroupsCollection collection) throws IOException {
+        final List<GroupsShard> shards = partition(collection);
+
+        final List<Future<ShardResult>> futures = new ArrayList<>(shards.size());
+        for (GroupsShard shard : shards) {
+            final FutureTask<ShardResult> task = new FutureTask<>(() -> publishShard(publisher, shard));
+            workers.execute(task);
+            futures.add(task);
+        }
+
+        final ShardManifest manifest = new ShardManifest();
+        manifest.setShardBy(shardBy.getName());
+        manifest.setVersion(collection.getVersion());
+        manifest.setLastUpdated(collection.getLastUpdated());
+
+        final Set<String> staleKeys = publisher.getPublishedKeys(SHARD_PREFIX);
+        staleKeys.remove(MANIFEST_KEY);
+        int changed = 0;
+        try {
+            for (Future<ShardResult> future : futures) {
+                final ShardResult result = await(future);
+                manifest.getShards().add(result.entry);
+                staleKeys.remove(getShardKey(result.entry.getId()));
+                if (result.written) {
+                    changed++;
+                }
+            }
+        } finally {
+            for (Future<ShardResult> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        if (publisher.publish(MANIFEST_KEY, manifest)) {
+            changed++;
+        }
+
+        for (String key : staleKeys) {
+            publisher.unpublish(key);
+            changed++;
+        }
+
+        LOG.info("Published " + shards.size() + " shards by " + shardBy.getName() + ", " + changed + " changed.");
+        return changed;
+    }
+
+    /**
+     * Split the groups by shardBy, keeping their order. Shards are ordered by first appearance.
+     */
+    private List<GroupsShard> partition(GroupsCollection collection) {
+        final Map<String, GroupsShard> shards = new LinkedHashMap<>();
+        for (GroupSearchDocument document : collection.getGroups()) {
+            final Reference reference = shardBy.property.apply(document);
+            final String id = reference != null && reference.getId() != null ? reference.getId() : NO_SHARD_ID;
+
+            GroupsShard shard = shards.get(id);
+            if (shard == null) {
+                shard = new GroupsShard();
+                shard.setId(id);
+                shard.setLabel(reference != null ? reference.getLabel() : null);
+                shard.setGroups(new ArrayList<>());
+                shards.put(id, shard);
+            }
+            shard.getGroups().add(document);
+        }
+
+        for (GroupsShard shard : shards.values()) {
+            final GroupsCollection subset = new GroupsCollection();
+            subset.setGroups(shard.getGroups());
+            subset.setSearchFields(collection.getSearchFields());
+            shard.setGroupCount(shard.getGroups().size());
+            shard.setFacets(FACET_INDEX_BUILDER.apply(subset).getFacets());
+        }
+
+        return new ArrayList<>(shards.values());
+    }
+
+    private ShardResult publishShard(JsonPublisher publisher, GroupsShard shard) throws IOException {
+        final String key = getShardKey(shard.getId());
+        // Shards have no timestamps, so the content which is hashed for the manifest is exactly what is published.
+        final JsonPublisher.SerializedDocument document = publisher.serialize(shard);
+        final JsonPublisher.Fingerprint fingerprint = document.getFingerprint();
+
+        final ShardEntry entry = new ShardEntry();
+        entry.setId(shard.getId());
+        entry.setLabel(shard.getLabel());
+        entry.setUrl(baseUrl + "/" + key);
+        entry.setGroupCount(shard.getGroupCount());
+        entry.setSize(fingerprint.getLength());
+        entry.setSha256(fingerprint.getSha256());
+
+        return new ShardResult(entry, publisher.publish(key, document));
+    }
+
+    private static ShardResult await(Future<ShardResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while publishing shards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Reference ids are usually numeric, but anything outside a safe set of characters is replaced.
+     */
+    private static String getShardKey(String id) {
+        return SHARD_PREFIX + id.replaceAll("[^A-Za-z0-9_-]", "_") + ".json";
+    }
+
+    private static class ShardResult {
+        final ShardEntry entry;
+        final boolean written;
+
+        ShardResult(ShardEntry entry, boolean written) {
+            this.entry = entry;
+            this.written = written;
+        }
+    }
+}
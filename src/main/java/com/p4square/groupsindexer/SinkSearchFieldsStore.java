@@ -0,0 +1,46 @@
+package com.p4square.groupsindexer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.p4square.groupsindexer.model.SearchFieldsSnapshot;
+import com.p4square.groupsindexer.output.ObjectInfo;
+import com.p4square.groupsindexer.output.OutputSink;
+import com.p4square.groupsindexer.output.SinkOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stores the search fields snapshot in the output sink, so it survives cold starts.
+ */
+public class SinkSearchFieldsStore implements SearchFieldsStore {
+
+    private final OutputSink outputSink;
+    private final String key;
+    private final ObjectMapper mapper;
+
+    public SinkSearchFieldsStore(OutputSink outputSink, String key, ObjectMapper mapper) {
+        this.outputSink = outputSink;
+        this.key = key;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public SearchFieldsSnapshot load() throws IOException {
+        try (InputStream in = outputSink.read(key)) {
+            return in != null ? mapper.readValue(in, SearchFieldsSnapshot.class) : null;
+        }
+    }
+
+    @Override
+    public void save(SearchFieldsSnapshot snapshot) throws IOException {
+        final byte[] content = mapper.writeValueAsBytes(snapshot);
+        final SinkOutputStream out = outputSink.openStream(key, new ObjectInfo().withContentType("application/json"));
+        try {
+            out.write(content);
+        } catch (IOException | RuntimeException e) {
+            out.abort();
+            throw e;
+        }
+        out.close();
+    }
+}
@@ -0,0 +1,356 @@
+package com.p4square.groupsindexer;
+
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.p4square.ccbapi.CCBAPIClient;
+import com.p4square.groupsindexer.model.ErrorResponse;
+import com.p4square.groupsindexer.output.FileSystemOutputSink;
+import com.p4square.groupsindexer.output.OutputSink;
+import com.p4square.groupsindexer.output.S3OutputSink;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * SyncDaemon runs the sync as a long-lived process instead of a scheduled lambda.
+ *
+ * The same {@link SyncGroups} instance runs on an internal schedule, so the CCB client, search fields cache, image
+ * workers and JIT stay warm between runs. The published groups data is served from memory over HTTP:
+ * <ul>
+ *  <li>GET /groups - Searches, with the parameters of {@link SearchGroups}.</li>
+ *  <li>GET /data/groups-data.json - The whole groups data, gzip compressed if the client accepts it.</li>
+ *  <li>GET /health - The loaded version and when the last sync completed, or 503 until the groups data can be
+ *      loaded.</li>
+ * </ul>
+ * Responses carry an ETag derived from the published data and conditional requests get 304 Not Modified.
+ * Requests are handled on virtual threads when the JDK has them.
+ *
+ * Takes the same environment variables as {@link SyncGroups} and {@link SearchGroups}, plus:
+ * <ul>
+ *  <li>OUTPUT_DIR - Publish to this directory instead of OUTPUT_BUCKET.</li>
+ *  <li>SYNC_INTERVAL_MINUTES - Time between the end of one sync and the start of the next (default 15).</li>
+ *  <li>HTTP_PORT - Port to serve on (default 8080).</li>
+ *  <li>HTTP_BIND_ADDRESS - Address to serve on (default 127.0.0.1).</li>
+ *  <li>HTTP_THREADS - Request threads when virtual threads are unavailable (default 16).</li>
+ * </ul>
+ */
+public class SyncDaemon {
+
+    private static final Logger LOG = LogManager.getLogger(SyncDaemon.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    static {
+        MAPPER.registerModule(new JavaTimeModule());
+        MAPPER.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    private final SyncGroups syncGroups;
+    private final GroupsIndexCache indexCache;
+    private final SearchGroups searchGroups;
+    private final long syncIntervalMinutes;
+
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService requestExecutor;
+    private final HttpServer server;
+
+    private volatile CachedDocument groupsData;
+    private volatile Instant lastSync;
+
+    public static void main(String[] args) throws Exception {
+        final Function<String, String> settings = System::getenv;
+        final OutputSink outputSink = settings.apply("OUTPUT_DIR") != null
+                ? new FileSystemOutputSink(Paths.get(settings.apply("OUTPUT_DIR")))
+                : new S3OutputSink(AmazonS3ClientBuilder.defaultClient(), settings.apply("OUTPUT_BUCKET"));
+        final SyncGroups syncGroups = new SyncGroups(new CCBAPIClient(new URI(settings.apply("CCBAPIURL")),
+                settings.apply("CCBAPIUser"), settings.apply("CCBAPIPassword")), outputSink, settings);
+
+        final SyncDaemon daemon = new SyncDaemon(syncGroups, outputSink, settings);
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::stop, "sync-daemon-shutdown"));
+        daemon.start();
+    }
+
+    /**
+     * @param syncGroups The sync to run.
+     * @param outputSink Where syncGroups publishes.
+     * @param settings Looks up the optional settings listed above by name. Returns null for unset settings.
+     */
+    public SyncDaemon(SyncGroups syncGroups, OutputSink outputSink, Function<String, String> settings)
+            throws IOException {
+        this.syncGroups = syncGroups;
+        this.indexCache = SearchGroups.createIndexCache(outputSink, settings);
+        this.searchGroups = new SearchGroups(indexCache, settings);
+        this.syncIntervalMinutes = SyncGroups.getIntSetting(settings, "SYNC_INTERVAL_MINUTES", 15);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "sync-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        this.requestExecutor = createRequestExecutor(SyncGroups.getIntSetting(settings, "HTTP_THREADS", 16));
+
+        final String bindAddress = settings.apply("HTTP_BIND_ADDRESS") != null
+                ? settings.apply("HTTP_BIND_ADDRESS")
+                : "127.0.0.1";
+        this.server = HttpServer.create(
+                new InetSocketAddress(bindAddress, SyncGroups.getIntSetting(settings, "HTTP_PORT", 8080)), 0);
+        server.setExecutor(requestExecutor);
+        server.createContext("/groups", this::handleSearch);
+        server.createContext("/" + SyncGroups.GROUPS_DATA_KEY, this::handleGroupsData);
+        server.createContext("/health", this::handleHealth);
+    }
+
+    /**
+     * Start serving and run the first sync immediately.
+     */
+    public void start() {
+        server.start();
+        LOG.info("Serving on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+        scheduler.scheduleWithFixedDelay(this::sync, 0, syncIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stop serving and stop scheduling syncs. A sync in progress is interrupted.
+     */
+    public void stop() {
+        scheduler.shutdownNow();
+        server.stop(1);
+        requestExecutor.shutdown();
+    }
+
+    /**
+     * @return The address the server is listening on.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void sync() {
+        try {
+            final String result = syncGroups.handleRequest(null, null);
+            if ("ok".equals(result)) {
+                // The groups data keeps its timestamps when a sync changes nothing, so remember this separately.
+                lastSync = Instant.now();
+            }
+            LOG.info("Sync finished: " + result);
+        } catch (RuntimeException e) {
+            // Keep the schedule going. The previous data is still served.
+            LOG.error("Sync failed: " + e.getMessage(), e);
+        }
+        indexCache.expire();
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        try {
+            if (!checkMethod(exchange)) {
+                return;
+            }
+            final String etag = getETag(indexCache.get(), null);
+            if (notModified(exchange, etag)) {
+                return;
+            }
+            final Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            send(exchange, 200, etag, MAPPER.writeValueAsBytes(searchGroups.search(parameters)));
+
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, null, MAPPER.writeValueAsBytes(new ErrorResponse(e.getMessage())));
+
+        } catch (IOException e) {
+            LOG.error("Failed to load groups data: " + e.getMessage(), e);
+            send(exchange, 503, null, MAPPER.writeValueAsBytes(new ErrorResponse("Groups data is unavailable.")));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleGroupsData(HttpExchange exchange) throws IOException {
+        try {
+            if (!checkMethod(exchange)) {
+                return;
+            }
+            final GroupsIndexCache.Snapshot snapshot = indexCache.get();
+            final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            final boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+            final String etag = getETag(snapshot, gzip ? "gzip" : null);
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+            if (notModified(exchange, etag)) {
+                return;
+            }
+
+            // Serialize and compress each version of the data once, not once per request.
+            CachedDocument document = groupsData;
+            if (document == null || document.snapshot != snapshot) {
+                document = new CachedDocument(snapshot, MAPPER.writeValueAsBytes(snapshot.getCollection()));
+                groupsData = document;
+            }
+
+            if (gzip) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            send(exchange, 200, etag, gzip ? document.gzipped : document.identity);
+
+        } catch (IOException e) {
+            LOG.error("Failed to load groups data: " + e.getMessage(), e);
+            send(exchange, 503, null, MAPPER.writeValueAsBytes(new ErrorResponse("Groups data is unavailable.")));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try {
+            final GroupsIndexCache.Snapshot snapshot = indexCache.get();
+            final Map<String, Object> health = new LinkedHashMap<>();
+            health.put("status", "ok");
+            health.put("version", snapshot.getCollection().getVersion());
+            health.put("groups", snapshot.getIndex().size());
+            health.put("last-sync", lastSync);
+            send(exchange, 200, null, MAPPER.writeValueAsBytes(health));
+        } catch (IOException e) {
+            send(exchange, 503, null, MAPPER.writeValueAsBytes(new ErrorResponse("Groups data is unavailable.")));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static boolean checkMethod(HttpExchange exchange) throws IOException {
+        final String method = exchange.getRequestMethod();
+        if ("GET".equals(method) || "HEAD".equals(method)) {
+            return true;
+        }
+        exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+        exchange.sendResponseHeaders(405, -1);
+        return false;
+    }
+
+    /**
+     * Answer 304 if the client already has the response with this ETag.
+     */
+    private static boolean notModified(HttpExchange exchange, String etag) throws IOException {
+        final String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        // If-None-Match uses the weak comparison, so W/ prefixes added by proxies are ignored.
+        for (String candidate : ifNoneMatch.split(",")) {
+            final String tag = candidate.trim();
+            if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(etag)) {
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.sendResponseHeaders(304, -1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Send a JSON response.
+     *
+     * @param etag The ETag of the response, or null for error responses.
+     */
+    private static void send(HttpExchange exchange, int status, String etag, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", JsonPublisher.CONTENT_TYPE);
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+        }
+
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Responses only change when the data does, so every response's ETag is derived from the data's. Strong ETags
+     * must differ between byte-different representations, so compressed responses get the encoding as a suffix.
+     *
+     * @param encoding The response's content encoding, or null if it is not encoded.
+     */
+    private static String getETag(GroupsIndexCache.Snapshot snapshot, String encoding) {
+        final String tag = snapshot.getETag().replace("\"", "");
+        return "\"" + (encoding != null ? tag + "-" + encoding : tag) + "\"";
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        final Map<String, String> parameters = new LinkedHashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            final int eq = pair.indexOf('=');
+            final String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+            final String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+            if (!name.isEmpty()) {
+                parameters.put(name, value);
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * @return An executor which starts a virtual thread per request on JDKs which have them, or a fixed pool.
+     */
+    private static ExecutorService createRequestExecutor(int threads) {
+        try {
+            final ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            LOG.info("Handling requests on virtual threads.");
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            LOG.info("Virtual threads are unavailable. Handling requests on " + threads + " threads.");
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            final Thread t = new Thread(r, "http-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * The serialized groups data for one snapshot.
+     */
+    private static class CachedDocument {
+        final GroupsIndexCache.Snapshot snapshot;
+        final byte[] identity;
+        final byte[] gzipped;
+
+        CachedDocument(GroupsIndexCache.Snapshot snapshot, byte[] identity) throws IOException {
+            this.snapshot = snapshot;
+            this.identity = identity;
+
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream(identity.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+                gzip.write(identity);
+            }
+            this.gzipped = buffer.toByteArray();
+        }
+    }
+}
@@ -3,30 +3,68 @@ package com.p4square.groupsindexer;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
-import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.p4square.ccbapi.CCBAPI;
 import com.p4square.ccbapi.CCBAPIClient;
 import com.p4square.ccbapi.model.GetGroupProfilesRequest;
-import com.p4square.ccbapi.model.GetGroupProfilesResponse;
 import com.p4square.ccbapi.model.GroupProfile;
-import com.p4square.ccbapi.model.InteractionType;
+import com.p4square.groupsindexer.ccb.AimdLimiter;
+import com.p4square.groupsindexer.ccb.CircuitBreaker;
+import com.p4square.groupsindexer.ccb.ResilientCCBAPI;
+import com.p4square.groupsindexer.geo.Gazetteer;
+import com.p4square.groupsindexer.geo.Geocoder;
+import com.p4square.groupsindexer.index.FacetIndexBuilder;
+import com.p4square.groupsindexer.index.GeoIndexBuilder;
+import com.p4square.groupsindexer.index.TextIndexBuilder;
+import com.p4square.groupsindexer.metrics.EmfMetricsRegistry;
+import com.p4square.groupsindexer.metrics.MetricsRegistry;
+import com.p4square.groupsindexer.model.ChangefeedManifest;
+import com.p4square.groupsindexer.model.CompactGroupsCollection;
+import com.p4square.groupsindexer.model.GeocodeCache;
+import com.p4square.groupsindexer.model.GroupListing;
+import com.p4square.groupsindexer.model.GroupListingAdapter;
 import com.p4square.groupsindexer.model.GroupSearchDocument;
 import com.p4square.groupsindexer.model.GroupSearchDocumentAdapter;
 import com.p4square.groupsindexer.model.GroupsCollection;
+import com.p4square.groupsindexer.model.GroupsListing;
+import com.p4square.groupsindexer.model.ImageManifest;
+import com.p4square.groupsindexer.model.PublishLedger;
+import com.p4square.groupsindexer.model.SnapshotFormat;
+import com.p4square.groupsindexer.model.SyncCheckpoint;
+import com.p4square.groupsindexer.model.SyncState;
+import com.p4square.groupsindexer.output.ObjectInfo;
+import com.p4square.groupsindexer.output.OutputSink;
+import com.p4square.groupsindexer.output.S3OutputSink;
+import com.p4square.groupsindexer.output.SinkOutputStream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
-import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 /**
  * SyncGroups is a scheduled lambda which syncs groups data from CCB.
@@ -39,109 +77,700 @@ import java.util.List;
  *  <li>OUTPUT_BUCKET</li>
  * </ul>
  *
+ * Optional environment variables:
+ * <ul>
+ *  <li>BASE_URL - Prefix to prepend to image urls.</li>
+ *  <li>IMAGE_WORKERS - Number of images to copy concurrently (default 8).</li>
+ *  <li>IMAGE_CONNECTIONS_PER_HOST - Maximum concurrent downloads from one host (default 4).</li>
+ *  <li>IMAGE_TIMEOUT_MS - Time allowed to copy one image (default 10000).</li>
+ *  <li>INCREMENTAL_SYNC - If true, only fetch groups modified since the last run (default false).</li>
+ *  <li>FULL_SYNC_INTERVAL_HOURS - How often an incremental sync does a full sync instead (default 24).</li>
+ *  <li>CHECKPOINT_RESERVE_MS - Time left when the sync stops and saves its progress for the next invocation
+ *      (default 60000).</li>
+ *  <li>CHECKPOINT_MAX_AGE_HOURS - How long a saved sync may be resumed before starting over (default 6).
+ *      CCB pages by position, so a sync which resumed fetching part way through is followed by a full sync.</li>
+ *  <li>COMPACT_OUTPUT - If true, also publish the groups with a shared references table (default false).</li>
+ *  <li>BINARY_OUTPUT - If true, also publish the compact groups data as CBOR (default false).</li>
+ *  <li>LISTING_SNIPPET_LENGTH - Longest description snippet in the listing, 0 for none (default 160).</li>
+ *  <li>CACHE_CONTROL - Cache-Control header for published data (default "public, max-age=300").</li>
+ *  <li>SEARCH_FIELDS_MAX_STALE_MINUTES - Oldest search fields published while they are refreshed in the
+ *      background. Older fields are refreshed before the sync continues, and only used if CCB fails (default
+ *      60).</li>
+ *  <li>PAGE_SIZE - Number of groups to fetch from CCB per request (default 250).</li>
+ *  <li>PIPELINE_QUEUE_DEPTH - Number of fetched pages which may wait to be processed (default 4).</li>
+ *  <li>GROUP_FILTER_* - Which groups are listed. See {@link GroupFilter}.</li>
+ *  <li>CHANGEFEED_HISTORY - Number of deltas listed in the changefeed manifest (default 48).</li>
+ *  <li>SHARD_BY - If campus or area, also publish the groups partitioned by that property (default unset).</li>
+ *  <li>SHARD_WORKERS - Number of shards to publish concurrently (default 4).</li>
+ *  <li>METRICS_NAMESPACE - CloudWatch namespace for the metrics of each run (default "GroupsIndexer").</li>
+ *  <li>CCB_MAX_CONCURRENCY - Most concurrent CCB requests. The limit starts at half and adapts (default 8).</li>
+ *  <li>CCB_MAX_ATTEMPTS - Times a throttled or failed CCB read is attempted (default 4).</li>
+ *  <li>CCB_BACKOFF_MS - Delay before the first retry of a CCB read, doubling for each retry (default 500).</li>
+ *  <li>CCB_BREAKER_THRESHOLD - Consecutive CCB failures which stop calls to CCB (default 5).</li>
+ *  <li>CCB_BREAKER_OPEN_MS - How long calls to CCB stay stopped before one is tried again (default 30000).</li>
+ *  <li>GAZETTEER_FILE - Path of a GeoNames postal code table used to locate groups. Groups are located from
+ *      the /geo/postal-codes.txt resource when unset, and not located if there is no such resource.</li>
+ *  <li>GEOCODE_CACHE_MAX_AGE_DAYS - How long located addresses are reused before they are located again
+ *      (default 30).</li>
+ *  <li>TENANT_ID - Keeps this sync's local cache files apart when several syncs share a container. Set by
+ *      {@link SyncTenants}.</li>
+ * </ul>
+ *
+ * Documents for clients are published under data/. State kept between runs is written under state/, which must
+ * not be served.
  */
 public class SyncGroups implements RequestHandler<ScheduledEvent, String> {
 
     private static final Logger LOG = LogManager.getLogger(SyncGroups.class);
-    private static final GroupSearchDocumentAdapter ADAPTER = new GroupSearchDocumentAdapter();
+    private static final FacetIndexBuilder FACET_INDEX_BUILDER = new FacetIndexBuilder();
+    private static final TextIndexBuilder TEXT_INDEX_BUILDER = new TextIndexBuilder();
+    private static final GeoIndexBuilder GEO_INDEX_BUILDER = new GeoIndexBuilder();
     private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectMapper CBOR_MAPPER = new ObjectMapper(new CBORFactory());
+    private static final String CBOR_CONTENT_TYPE = "application/cbor";
+    static final String GROUPS_DATA_KEY = "data/groups-data.json";
+    private static final String COMPACT_GROUPS_DATA_KEY = "data/groups-data-compact.json";
+    private static final String BINARY_GROUPS_DATA_KEY = "data/groups-data-compact.cbor";
+    private static final String GROUPS_LISTING_KEY = "data/groups-listing.json";
+    private static final String GROUP_DETAIL_PREFIX = "data/groups/";
+    private static final String FACET_INDEX_KEY = "data/groups-facets.json";
+    private static final String TEXT_INDEX_KEY = "data/groups-text-index.json";
+    private static final String GEO_INDEX_KEY = "data/groups-geo-index.json";
+    private static final String GAZETTEER_RESOURCE = "/geo/postal-codes.txt";
+
+    /**
+     * Where the sync keeps state between runs. Unlike data/, nothing here is for clients.
+     */
+    private static final String STATE_PREFIX = "state/";
+    private static final String GEOCODE_CACHE_KEY = STATE_PREFIX + "geocode-cache.json";
+    private static final String IMAGE_MANIFEST_KEY = STATE_PREFIX + "image-manifest.json";
+    private static final String CHECKPOINT_KEY = STATE_PREFIX + "sync-checkpoint.json";
+    private static final String PUBLISH_LEDGER_KEY = STATE_PREFIX + "publish-ledger.json";
+    private static final String SYNC_STATE_KEY = STATE_PREFIX + "sync-state.json";
+    private static final String SEARCH_FIELDS_CACHE_KEY = STATE_PREFIX + "search-fields-cache.json";
+
+    /**
+     * Keys older versions kept state at, by the key it is kept at now.
+     */
+    private static final Map<String, String> LEGACY_STATE_KEYS = new LinkedHashMap<>();
+
     static {
         MAPPER.registerModule(new JavaTimeModule());
         MAPPER.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        MAPPER.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        CBOR_MAPPER.registerModule(new JavaTimeModule());
+        CBOR_MAPPER.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        LEGACY_STATE_KEYS.put(GEOCODE_CACHE_KEY, "data/geocode-cache.json");
+        LEGACY_STATE_KEYS.put(IMAGE_MANIFEST_KEY, "data/image-manifest.json");
+        LEGACY_STATE_KEYS.put(CHECKPOINT_KEY, "data/sync-checkpoint.json");
+        LEGACY_STATE_KEYS.put(PUBLISH_LEDGER_KEY, "data/publish-ledger.json");
+        LEGACY_STATE_KEYS.put(SYNC_STATE_KEY, "data/sync-state.json");
+        LEGACY_STATE_KEYS.put(SEARCH_FIELDS_CACHE_KEY, "data/search-fields-cache.json");
     }
 
-    private final String outputBucket;
     private final String baseUrl;
+    private final boolean incrementalSync;
+    private final Duration fullSyncInterval;
+    private final long checkpointReserveMs;
+    private final Duration checkpointMaxAge;
+    private final boolean compactOutput;
+    private final boolean binaryOutput;
+    private final String cacheControl;
+    private final int changefeedHistory;
+    private final GroupListingAdapter listingAdapter;
 
     private final CCBAPI ccbClient;
-    private final AmazonS3 s3Client;
+    private final OutputSink outputSink;
+    private final MetricsRegistry metrics;
 
     private final SearchFieldsCache searchFieldsCache;
+    private final ImageMirror imageMirror;
+    private final Geocoder geocoder;
+    private final GroupFilter groupFilter;
+    private final SyncPipeline pipeline;
+    private final ShardPublisher shardPublisher;
 
     public SyncGroups() throws Exception {
-        // Setup CCB Client
-        final String CCBAPIURL = System.getenv("CCBAPIURL");
-        final String CCBAPIUser = System.getenv("CCBAPIUser");
-        final String CCBAPIPassword = System.getenv("CCBAPIPassword");
-        ccbClient = new CCBAPIClient(new URI(CCBAPIURL), CCBAPIUser, CCBAPIPassword);
-        searchFieldsCache = new SearchFieldsCache(ccbClient);
+        this(new CCBAPIClient(new URI(System.getenv("CCBAPIURL")),
+                        System.getenv("CCBAPIUser"), System.getenv("CCBAPIPassword")),
+                new S3OutputSink(AmazonS3ClientBuilder.defaultClient(), System.getenv("OUTPUT_BUCKET")),
+                System::getenv);
+    }
+
+    /**
+     * Create a SyncGroups which reads from ccbClient and publishes to outputSink. Metrics are logged in CloudWatch
+     * Embedded Metric Format.
+     *
+     * @param ccbClient The CCB API client.
+     * @param outputSink Where to publish the data and images.
+     * @param settings Looks up the optional settings listed above by name. Returns null for unset settings.
+     */
+    public SyncGroups(CCBAPI ccbClient, OutputSink outputSink, Function<String, String> settings) {
+        this(ccbClient, outputSink, settings, new EmfMetricsRegistry(
+                settings.apply("METRICS_NAMESPACE") != null ? settings.apply("METRICS_NAMESPACE") : "GroupsIndexer",
+                Collections.singletonMap("FunctionName", settings.apply("AWS_LAMBDA_FUNCTION_NAME"))));
+    }
+
+    /**
+     * Create a SyncGroups which reads from ccbClient, publishes to outputSink and reports to metrics.
+     *
+     * @param ccbClient The CCB API client.
+     * @param outputSink Where to publish the data and images.
+     * @param settings Looks up the optional settings listed above by name. Returns null for unset settings.
+     * @param metrics Receives the timings, sizes and errors of every phase. Flushed after each run.
+     */
+    public SyncGroups(CCBAPI ccbClient, OutputSink outputSink, Function<String, String> settings,
+                      MetricsRegistry metrics) {
+        this(ccbClient, outputSink, settings, metrics, null, null);
+    }
 
-        // Setup S3 Client
-        outputBucket = System.getenv("OUTPUT_BUCKET");
-        s3Client = AmazonS3ClientBuilder.defaultClient();
+    /**
+     * Create a SyncGroups which shares worker threads with other syncs.
+     *
+     * @param httpWorkers Runs CCB lookups and image copies, or null for pools of this sync's own.
+     * @param uploadWorkers Publishes shards, or null for a pool of this sync's own.
+     */
+    SyncGroups(CCBAPI ccbClient, OutputSink outputSink, Function<String, String> settings, MetricsRegistry metrics,
+               Executor httpWorkers, Executor uploadWorkers) {
+        // Adapt concurrency to what CCB can take, retry transient failures and stop calling CCB while it fails.
+        final int maxConcurrency = getIntSetting(settings, "CCB_MAX_CONCURRENCY", 8);
+        this.ccbClient = new ResilientCCBAPI(ccbClient,
+                new AimdLimiter(Math.max(1, maxConcurrency / 2), 1, maxConcurrency),
+                new CircuitBreaker(getIntSetting(settings, "CCB_BREAKER_THRESHOLD", 5),
+                        getIntSetting(settings, "CCB_BREAKER_OPEN_MS", 30000)),
+                getIntSetting(settings, "CCB_MAX_ATTEMPTS", 4),
+                getIntSetting(settings, "CCB_BACKOFF_MS", 500),
+                metrics);
+        this.outputSink = outputSink;
+        this.metrics = metrics;
+
+        // Cache search fields in memory, backed by copies in /tmp and the output sink to survive cold starts.
+        final String tenantId = settings.apply("TENANT_ID");
+        final Path localSearchFields = Paths.get(System.getProperty("java.io.tmpdir"),
+                tenantId != null ? "search-fields-" + tenantId + ".json" : "search-fields.json");
+        final List<SearchFieldsStore> searchFieldsStores = Arrays.asList(
+                new FileSearchFieldsStore(localSearchFields, MAPPER),
+                new SinkSearchFieldsStore(outputSink, SEARCH_FIELDS_CACHE_KEY, MAPPER));
+        final Duration searchFieldsMaxStaleness =
+                Duration.ofMinutes(getIntSetting(settings, "SEARCH_FIELDS_MAX_STALE_MINUTES", 60));
+        searchFieldsCache = httpWorkers != null
+                ? new SearchFieldsCache(this.ccbClient, httpWorkers, searchFieldsStores, searchFieldsMaxStaleness)
+                : new SearchFieldsCache(this.ccbClient, searchFieldsStores, searchFieldsMaxStaleness);
 
         // Prefix to prepend to image urls.
-        baseUrl = System.getenv("BASE_URL");
+        baseUrl = settings.apply("BASE_URL");
+
+        // Incremental sync settings.
+        incrementalSync = Boolean.parseBoolean(settings.apply("INCREMENTAL_SYNC"));
+        fullSyncInterval = Duration.ofHours(getIntSetting(settings, "FULL_SYNC_INTERVAL_HOURS", 24));
+
+        // Checkpoint settings.
+        checkpointReserveMs = getIntSetting(settings, "CHECKPOINT_RESERVE_MS", 60000);
+        checkpointMaxAge = Duration.ofHours(getIntSetting(settings, "CHECKPOINT_MAX_AGE_HOURS", 6));
+
+        // Optional output formats.
+        compactOutput = Boolean.parseBoolean(settings.apply("COMPACT_OUTPUT"));
+        binaryOutput = Boolean.parseBoolean(settings.apply("BINARY_OUTPUT"));
+        cacheControl = settings.apply("CACHE_CONTROL") != null
+                ? settings.apply("CACHE_CONTROL")
+                : "public, max-age=300";
+        listingAdapter = new GroupListingAdapter(getIntSetting(settings, "LISTING_SNIPPET_LENGTH", 160));
+        changefeedHistory = getIntSetting(settings, "CHANGEFEED_HISTORY", 48);
+
+        // Setup the image copying stage.
+        final int connectionsPerHost = getIntSetting(settings, "IMAGE_CONNECTIONS_PER_HOST", 4);
+        final int imageTimeoutMs = getIntSetting(settings, "IMAGE_TIMEOUT_MS", 10000);
+        imageMirror = httpWorkers != null
+                ? new ImageMirror(outputSink, httpWorkers, connectionsPerHost, imageTimeoutMs, metrics)
+                : new ImageMirror(outputSink, getIntSetting(settings, "IMAGE_WORKERS", 8), connectionsPerHost,
+                        imageTimeoutMs, metrics);
+
+        // Locate groups from an offline gazetteer, if there is one.
+        geocoder = createGeocoder(settings.apply("GAZETTEER_FILE"),
+                Duration.ofDays(getIntSetting(settings, "GEOCODE_CACHE_MAX_AGE_DAYS", 30)));
+
+        // Stream groups from CCB through filtering, adapting and image copying.
+        groupFilter = GroupFilter.fromSettings(settings);
+        pipeline = new SyncPipeline(this.ccbClient, groupFilter, this::createAdapter, imageMirror, baseUrl,
+                getIntSetting(settings, "PAGE_SIZE", 250),
+                getIntSetting(settings, "PIPELINE_QUEUE_DEPTH", 4),
+                metrics);
+
+        // Optionally partition the groups by campus or area.
+        final ShardPublisher.ShardBy shardBy = ShardPublisher.ShardBy.fromSetting(settings.apply("SHARD_BY"));
+        if (shardBy == null) {
+            shardPublisher = null;
+        } else if (uploadWorkers != null) {
+            shardPublisher = new ShardPublisher(shardBy, baseUrl, uploadWorkers);
+        } else {
+            shardPublisher = new ShardPublisher(shardBy, baseUrl, getIntSetting(settings, "SHARD_WORKERS", 4));
+        }
     }
 
     @Override
     public String handleRequest(ScheduledEvent s3Event, Context context) {
+        final long start = System.nanoTime();
         try {
+            moveLegacyState();
+            final GroupsCollection previous = loadGroupsData();
+            final SyncCheckpoint run = resumeOrStart(previous, Instant.now());
+            final boolean incremental = run.getModifiedSince() != null;
+
             final GroupsCollection groupsCollection = new GroupsCollection();
-            groupsCollection.setLastUpdated(Instant.now());
+            groupsCollection.setLastUpdated(run.getStarted());
+            groupsCollection.setLastFullSync(run.getLastFullSync());
+            final long searchFieldsStart = System.nanoTime();
             groupsCollection.setSearchFields(searchFieldsCache.getSearchFields());
+            metrics.recordTime("SearchFieldsTime", MetricsRegistry.since(searchFieldsStart));
 
-            final GetGroupProfilesResponse response = ccbClient.getGroupProfiles(
-                    new GetGroupProfilesRequest()
-                            .withIncludeImageUrl(true)
-                            .withIncludeParticipants(false));
+            final GetGroupProfilesRequest request = new GetGroupProfilesRequest()
+                    .withIncludeImageUrl(true)
+                    .withIncludeParticipants(false);
+            if (incremental) {
+                request.withModifiedSince(run.getModifiedSince());
+            }
 
-            final List<GroupSearchDocument> groups = new ArrayList<>();
+            if (geocoder != null) {
+                geocoder.begin(loadGeocodeCache(), run.getStarted());
+            }
 
-            for (GroupProfile profile : response.getGroups()) {
-                if (!profile.isActive() ||
-                        !profile.isPublicSearchListed() ||
-                        profile.getInteractionType() != InteractionType.MEMBERS_INTERACT) {
-                    LOG.info("Skipping inactive/unlisted group " + profile.getName());
-                    continue;
-                }
+            // Start from the groups processed so far. Unchanged groups keep their documents.
+            final ImageManifest imageManifest = loadImageManifest();
+            final Map<Integer, GroupSearchDocument> groups = new LinkedHashMap<>();
+            for (GroupSearchDocument document : run.getGroups()) {
+                groups.put(document.getId(), document);
+            }
 
-                if (!(profile.getGroupType().getName().contains("Community") ||
-                      profile.getGroupType().getName().contains("Growth")))
-                {
-                    LOG.info("Skipping non-Community/Growth group " + profile.getName());
-                    continue;
-                }
+            final PublishLedger ledger = loadPublishLedger();
+            final JsonPublisher publisher = new JsonPublisher(outputSink, MAPPER, cacheControl, ledger, metrics);
+            final Map<Integer, JsonPublisher.Fingerprint> detailFingerprints = new HashMap<>();
+            int published = 0;
+            if (!run.isFetchComplete()) {
+                // Stream the groups from CCB, serializing each group's detail document as soon as its image is
+                // copied. Nothing is published until every group is fetched, so readers never see a partial sync.
+                final long pipelineStart = System.nanoTime();
+                final SyncPipeline.Result result = pipeline.run(request, run.getNextPage(),
+                        () -> isOutOfTime(context), imageManifest, groups,
+                        document -> detailFingerprints.put(document.getId(), publisher.fingerprint(document)));
+                metrics.recordTime("PipelineTime", MetricsRegistry.since(pipelineStart));
+                LOG.info("Copied images. Succeeded: " + result.getImageCount(ImageMirror.Status.SUCCEEDED) +
+                        ", unchanged: " + result.getImageCount(ImageMirror.Status.UNCHANGED) +
+                        ", failed: " + result.getImageCount(ImageMirror.Status.FAILED) +
+                        ", timed out: " + result.getImageCount(ImageMirror.Status.TIMED_OUT));
+                LOG.info("Skipped groups by filter rule: " + groupFilter.drainSkipCounts());
+                LOG.info("Fetched " + result.getFetched() + " groups in " + result.getPages() + " pages, skipped " +
+                        result.getSkipped() + ".");
 
-                // Transform GroupProfile to Search Document.
-                final GroupSearchDocument document = ADAPTER.apply(profile);
-
-                // Save GroupProfile image.
-                document.setImageUrl(null);
-                if (profile.getImageUrl() != null && !profile.getImageUrl().isEmpty()) {
-                    final String imageKey = "group-images/group-" + profile.getId();
-                    InputStream in = null;
-                    try {
-                        final URL imageUrl = new URL(profile.getImageUrl());
-                        in = imageUrl.openStream();
-                        s3Client.putObject(outputBucket, imageKey, in, null);
-                        document.setImageUrl(baseUrl + "/" + imageKey);
-                    } catch (Exception e) {
-                        LOG.error("Failed to upload image for group " + profile.getId(), e);
-                    } finally {
-                        if (in != null) {
-                            try {
-                                in.close();
-                            } catch (IOException e) {
-                                // Ignore
-                            }
-                        }
-                    }
+                // Save progress and let the next invocation finish if there isn't time to publish.
+                run.setNextPage(result.getNextPage());
+                run.setFetchComplete(result.isComplete());
+                if (!result.isComplete() || isOutOfTime(context)) {
+                    run.setGroups(new ArrayList<>(groups.values()));
+                    writeCheckpoint(run, ledger, imageManifest);
+                    metrics.count("Checkpoints", 1);
+                    return "checkpointed";
                 }
-
-                groups.add(document);
             }
 
             // Save the groups data
-            groupsCollection.setGroups(groups);
-            s3Client.putObject(outputBucket, "data/groups-data.json", MAPPER.writeValueAsString(groupsCollection));
+            final long publishStart = System.nanoTime();
+            groupsCollection.setGroups(new ArrayList<>(groups.values()));
+            final ChangefeedPublisher changefeed = new ChangefeedPublisher(publisher, MAPPER,
+                    loadChangefeedManifest(), baseUrl, changefeedHistory);
+            changefeed.prepare(previous, groupsCollection);
 
-            LOG.info("Updated search index. Found " + response.getGroups().size() + " groups.");
+            // Stamp the groups data and everything which refers to its positions with the same content version.
+            final JsonPublisher.Fingerprint groupsFingerprint = publisher.fingerprint(groupsCollection);
+            groupsCollection.setContentVersion(groupsFingerprint.getSha256());
+            if (publisher.publish(GROUPS_DATA_KEY, groupsCollection, groupsFingerprint)) {
+                published++;
+            }
+            if (compactOutput &&
+                    publisher.publish(COMPACT_GROUPS_DATA_KEY, new CompactGroupsCollection(groupsCollection))) {
+                published++;
+            }
+            if (binaryOutput && publisher.publish(BINARY_GROUPS_DATA_KEY,
+                    new CompactGroupsCollection(groupsCollection), CBOR_MAPPER, CBOR_CONTENT_TYPE)) {
+                published++;
+            }
+            if (publisher.publish(GROUPS_LISTING_KEY, buildListing(groupsCollection))) {
+                published++;
+            }
+            published += publishGroupDetails(publisher, groupsCollection.getGroups(), detailFingerprints);
+            if (publisher.publish(FACET_INDEX_KEY, FACET_INDEX_BUILDER.apply(groupsCollection))) {
+                published++;
+            }
+            if (publisher.publish(TEXT_INDEX_KEY, TEXT_INDEX_BUILDER.apply(groupsCollection))) {
+                published++;
+            }
+            if (geocoder != null && publisher.publish(GEO_INDEX_KEY, GEO_INDEX_BUILDER.apply(groupsCollection))) {
+                published++;
+            }
+            if (shardPublisher != null) {
+                published += shardPublisher.publish(publisher, groupsCollection);
+            }
+            published += changefeed.publish(GROUPS_DATA_KEY, getSnapshotFormats());
+            writeJson(PUBLISH_LEDGER_KEY, ledger);
+            writeGeocodeCache();
+            metrics.recordTime("PublishPhaseTime", MetricsRegistry.since(publishStart));
+            LOG.info("Published " + published + " changed documents.");
+
+            // Remove images for groups which are no longer listed.
+            imageManifest.retainAll(groups.keySet());
+            writeJson(IMAGE_MANIFEST_KEY, imageManifest);
+            final int deletedImages = imageMirror.collectGarbage(imageManifest);
+            if (deletedImages > 0) {
+                LOG.info("Deleted " + deletedImages + " stale images.");
+            }
+
+            // Everything is published, so the next invocation starts a new sync.
+            final SyncState state = new SyncState();
+            state.setLastUpdated(run.getStarted());
+            state.setLastFullSync(run.getLastFullSync());
+            state.setFullSyncRequired(run.isFetchResumed());
+            writeJson(SYNC_STATE_KEY, state);
+            outputSink.delete(Collections.singletonList(CHECKPOINT_KEY));
+
+            metrics.count("GroupsListed", groups.size());
+            LOG.info("Search fields cache: " + searchFieldsCache.getStats());
+            if (geocoder != null) {
+                LOG.info("Geocoder: " + geocoder.getStats());
+            }
+            LOG.info("Updated search index (" + (incremental ? "incremental" : "full") + " sync) with " +
+                    groups.size() + " groups.");
             return "ok";
 
         } catch (IOException e) {
             LOG.error("Unexpected Exception: " + e.getMessage(), e);
+            metrics.count("SyncErrors", 1);
             throw new RuntimeException(e);
+
+        } catch (RuntimeException e) {
+            metrics.count("SyncErrors", 1);
+            throw e;
+
+        } finally {
+            metrics.recordTime("SyncTime", MetricsRegistry.since(start));
+            metrics.flush();
+        }
+    }
+
+    /**
+     * Continue the sync saved in the checkpoint, or start a new one if there is no usable checkpoint.
+     */
+    private SyncCheckpoint resumeOrStart(GroupsCollection previous, Instant now) {
+        final SyncCheckpoint checkpoint = loadCheckpoint();
+        if (checkpoint != null && checkpoint.getStarted() != null &&
+                now.isBefore(checkpoint.getStarted().plus(checkpointMaxAge))) {
+            if (!checkpoint.isFetchComplete()) {
+                checkpoint.setFetchResumed(true);
+            }
+            LOG.info("Resuming the sync started at " + checkpoint.getStarted() + (checkpoint.isFetchComplete()
+                    ? ". Publishing only."
+                    : " from page " + checkpoint.getNextPage() + "."));
+            return checkpoint;
+        } else if (checkpoint != null) {
+            LOG.warn("Discarding checkpoint of the sync started at " + checkpoint.getStarted() + ".");
+        }
+
+        // The groups data is only rewritten when its content changes, so its timestamps may be older than the
+        // last sync. The sync state has the times of the last completed sync.
+        final SyncState state = loadSyncState(previous);
+        final boolean incremental = incrementalSync &&
+                previous != null &&
+                state != null &&
+                !state.isFullSyncRequired() &&
+                state.getLastUpdated() != null &&
+                state.getLastFullSync() != null &&
+                now.isBefore(state.getLastFullSync().plus(fullSyncInterval));
+        if (state != null && state.isFullSyncRequired()) {
+            LOG.info("The last sync resumed fetching part way through. Running a full sync to reconcile.");
+        }
+
+        final SyncCheckpoint run = new SyncCheckpoint();
+        run.setStarted(now);
+        run.setLastFullSync(incremental ? state.getLastFullSync() : now);
+        if (incremental) {
+            // CCB only filters by date. Go back an extra day so time zone differences can't drop changes.
+            run.setModifiedSince(state.getLastUpdated().atZone(ZoneOffset.UTC).toLocalDate().minusDays(1));
+            run.setGroups(new ArrayList<>(previous.getGroups()));
+        }
+        return run;
+    }
+
+    /**
+     * @return A new adapter for one run. Each run pools its own references, so nothing is shared between runs or
+     *         tenants and the pool can't grow across the runs of a long-lived process.
+     */
+    private Function<GroupProfile, GroupSearchDocument> createAdapter() {
+        final GroupSearchDocumentAdapter adapter = new GroupSearchDocumentAdapter();
+        return geocoder != null ? adapter.andThen(geocoder) : adapter;
+    }
+
+    /**
+     * @return true if the invocation should stop and checkpoint so it can't be killed by the Lambda timeout.
+     */
+    private boolean isOutOfTime(Context context) {
+        return context != null && context.getRemainingTimeInMillis() < checkpointReserveMs;
+    }
+
+    /**
+     * Save the progress of an incomplete sync. The ledger and image manifest are saved too, so the documents and
+     * images already published are not written again.
+     */
+    private void writeCheckpoint(SyncCheckpoint run, PublishLedger ledger, ImageManifest imageManifest)
+            throws IOException {
+        writeJson(PUBLISH_LEDGER_KEY, ledger);
+        writeJson(IMAGE_MANIFEST_KEY, imageManifest);
+        writeGeocodeCache();
+        writeJson(CHECKPOINT_KEY, run);
+        LOG.info("Ran out of time. Saved " + run.getGroups().size() + " groups" +
+                (run.isFetchComplete() ? " to publish." : " to resume from page " + run.getNextPage() + "."));
+    }
+
+    private GroupsListing buildListing(GroupsCollection groupsCollection) {
+        final List<GroupListing> listings = new ArrayList<>(groupsCollection.getGroups().size());
+        for (GroupSearchDocument document : groupsCollection.getGroups()) {
+            listings.add(listingAdapter.apply(document));
+        }
+
+        final GroupsListing listing = new GroupsListing();
+        listing.setLastUpdated(groupsCollection.getLastUpdated());
+        listing.setContentVersion(groupsCollection.getContentVersion());
+        listing.setDetailUrlTemplate(baseUrl + "/" + GROUP_DETAIL_PREFIX + "{id}.json");
+        listing.setGroups(listings);
+        listing.setSearchFields(groupsCollection.getSearchFields());
+        return listing;
+    }
+
+    /**
+     * Publish a detail document for each group and remove the documents of groups which are gone.
+     *
+     * @param fingerprints Fingerprints of detail documents already serialized by the pipeline, by group id.
+     * @return The number of documents written or deleted.
+     */
+    private int publishGroupDetails(JsonPublisher publisher, List<GroupSearchDocument> groups,
+                                    Map<Integer, JsonPublisher.Fingerprint> fingerprints) throws IOException {
+        final Set<String> staleKeys = publisher.getPublishedKeys(GROUP_DETAIL_PREFIX);
+        int changed = 0;
+        for (GroupSearchDocument document : groups) {
+            final String key = getDetailKey(document);
+            staleKeys.remove(key);
+            final JsonPublisher.Fingerprint fingerprint = fingerprints.get(document.getId());
+            final boolean written = fingerprint != null
+                    ? publisher.publish(key, document, fingerprint)
+                    : publisher.publish(key, document);
+            if (written) {
+                changed++;
+            }
+        }
+
+        for (String key : staleKeys) {
+            publisher.unpublish(key);
+            changed++;
+        }
+        return changed;
+    }
+
+    /**
+     * @return The formats the groups data is published in, cheapest to decode first.
+     */
+    private List<SnapshotFormat> getSnapshotFormats() {
+        final List<SnapshotFormat> formats = new ArrayList<>();
+        if (binaryOutput) {
+            formats.add(new SnapshotFormat("cbor-compact", CBOR_CONTENT_TYPE, GroupsCollection.SCHEMA_VERSION,
+                    baseUrl + "/" + BINARY_GROUPS_DATA_KEY));
+        }
+        if (compactOutput) {
+            formats.add(new SnapshotFormat("json-compact", JsonPublisher.CONTENT_TYPE, GroupsCollection.SCHEMA_VERSION,
+                    baseUrl + "/" + COMPACT_GROUPS_DATA_KEY));
+        }
+        formats.add(new SnapshotFormat("json", JsonPublisher.CONTENT_TYPE, GroupsCollection.SCHEMA_VERSION,
+                baseUrl + "/" + GROUPS_DATA_KEY));
+        return formats;
+    }
+
+    /**
+     * @return A Geocoder backed by the gazetteer file, or the bundled gazetteer, or null if there is neither.
+     */
+    private static Geocoder createGeocoder(String gazetteerFile, Duration maxCacheAge) {
+        if (gazetteerFile != null && !gazetteerFile.isEmpty()) {
+            final Path path = Paths.get(gazetteerFile);
+            return new Geocoder(() -> {
+                try (InputStream in = Files.newInputStream(path)) {
+                    return Gazetteer.read(in);
+                }
+            }, maxCacheAge);
+        }
+
+        if (SyncGroups.class.getResource(GAZETTEER_RESOURCE) != null) {
+            return new Geocoder(() -> {
+                try (InputStream in = SyncGroups.class.getResourceAsStream(GAZETTEER_RESOURCE)) {
+                    return Gazetteer.read(in);
+                }
+            }, maxCacheAge);
+        }
+
+        LOG.info("No gazetteer is configured. Groups will not be located.");
+        return null;
+    }
+
+    /**
+     * Save the geocode cache if this run located any new addresses.
+     */
+    private void writeGeocodeCache() throws IOException {
+        final GeocodeCache cache = geocoder != null ? geocoder.getChangedCache() : null;
+        if (cache != null) {
+            writeJson(GEOCODE_CACHE_KEY, cache);
+        }
+    }
+
+    private static String getDetailKey(GroupSearchDocument document) {
+        return GROUP_DETAIL_PREFIX + document.getId() + ".json";
+    }
+
+    /**
+     * Serialize value straight into the output sink without building the whole document in memory.
+     */
+    private void writeJson(String key, Object value) throws IOException {
+        final SinkOutputStream out = outputSink.openStream(key, new ObjectInfo().withContentType("application/json"));
+        try {
+            final JsonGenerator generator = MAPPER.getFactory().createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            MAPPER.writeValue(generator, value);
+            generator.close();
+        } catch (IOException | RuntimeException e) {
+            out.abort();
+            throw e;
+        }
+        out.close();
+    }
+
+    /**
+     * @return The object stored at key, or null if there is no such object.
+     */
+    private <T> T readJson(String key, Class<T> type) throws IOException {
+        try (InputStream in = outputSink.read(key)) {
+            return in != null ? MAPPER.readValue(in, type) : null;
+        }
+    }
+
+    /**
+     * Move state which older versions published under data/ to its private key, and delete the public copy.
+     */
+    private void moveLegacyState() {
+        for (Map.Entry<String, String> entry : LEGACY_STATE_KEYS.entrySet()) {
+            final String key = entry.getKey();
+            final String legacyKey = entry.getValue();
+            try {
+                final JsonNode state = readJson(legacyKey, JsonNode.class);
+                if (state == null) {
+                    continue;
+                }
+                if (outputSink.getETag(key) == null) {
+                    writeJson(key, state);
+                }
+                outputSink.delete(Collections.singletonList(legacyKey));
+                LOG.info("Moved " + legacyKey + " to " + key + ".");
+            } catch (Exception e) {
+                LOG.warn("Failed to move " + legacyKey + " to " + key + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private GroupsCollection loadGroupsData() {
+        try {
+            return readJson(GROUPS_DATA_KEY, GroupsCollection.class);
+        } catch (Exception e) {
+            LOG.warn("Failed to load previous groups data. Running a full sync: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return The state of the last completed sync, taken from the groups data if it was published before the
+     *         sync state was, or null if neither is available.
+     */
+    private SyncState loadSyncState(GroupsCollection previous) {
+        try {
+            final SyncState state = readJson(SYNC_STATE_KEY, SyncState.class);
+            if (state != null) {
+                return state;
+            }
+        } catch (Exception e) {
+            LOG.warn("Failed to load sync state. Running a full sync: " + e.getMessage());
+            return null;
+        }
+
+        if (previous == null) {
+            return null;
+        }
+        final SyncState state = new SyncState();
+        state.setLastUpdated(previous.getLastUpdated());
+        state.setLastFullSync(previous.getLastFullSync());
+        return state;
+    }
+
+    private SyncCheckpoint loadCheckpoint() {
+        try {
+            return readJson(CHECKPOINT_KEY, SyncCheckpoint.class);
+        } catch (Exception e) {
+            LOG.warn("Failed to load sync checkpoint. Starting a new sync: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private ImageManifest loadImageManifest() {
+        try {
+            final ImageManifest manifest = readJson(IMAGE_MANIFEST_KEY, ImageManifest.class);
+            if (manifest != null) {
+                return manifest;
+            }
+        } catch (Exception e) {
+            LOG.warn("Failed to load image manifest. All images will be copied: " + e.getMessage());
+        }
+        return new ImageManifest();
+    }
+
+    private ChangefeedManifest loadChangefeedManifest() {
+        try {
+            final ChangefeedManifest manifest = readJson(ChangefeedPublisher.MANIFEST_KEY, ChangefeedManifest.class);
+            if (manifest != null) {
+                return manifest;
+            }
+        } catch (Exception e) {
+            LOG.warn("Failed to load changefeed manifest. Starting a new changefeed: " + e.getMessage());
+        }
+        return new ChangefeedManifest();
+    }
+
+    private GeocodeCache loadGeocodeCache() {
+        try {
+            return readJson(GEOCODE_CACHE_KEY, GeocodeCache.class);
+        } catch (Exception e) {
+            LOG.warn("Failed to load geocode cache. All addresses will be located again: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private PublishLedger loadPublishLedger() {
+        try {
+            final PublishLedger ledger = readJson(PUBLISH_LEDGER_KEY, PublishLedger.class);
+            if (ledger != null) {
+                return ledger;
+            }
+        } catch (Exception e) {
+            LOG.warn("Failed to load publish ledger. All documents will be published: " + e.getMessage());
+        }
+        return new PublishLedger();
+    }
+
+    static int getIntSetting(Function<String, String> settings, String name, int defaultValue) {
+        final String value = settings.apply(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
         }
+        return Integer.parseInt(value);
     }
 }
@@ -0,0 +1,345 @@
+package com.p4square.groupsindexer;
+
+import com.p4square.ccbapi.CCBAPI;
+import com.p4square.ccbapi.model.GetGroupProfilesRequest;
+import com.p4square.ccbapi.model.GroupProfile;
+import com.p4square.groupsindexer.metrics.MetricsRegistry;
+import com.p4square.groupsindexer.model.GroupSearchDocument;
+import com.p4square.groupsindexer.model.ImageManifest;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * SyncPipeline streams group profiles from CCB through the stages of a sync:
+ * <ol>
+ *  <li>fetch - profiles are fetched from CCB a page at a time.</li>
+ *  <li>filter and adapt - listed groups are converted to search documents and their images are queued.</li>
+ *  <li>image mirror - the {@link ImageMirror}'s workers copy the images.</li>
+ *  <li>serialize - as each document's image finishes, the document is handed to a {@link DocumentHandler} and
+ *      collected.</li>
+ * </ol>
+ *
+ * Fetch and adapt run on their own threads and serialize runs on the caller's thread. The stages are joined by
+ * bounded queues, so a slow stage blocks the stages before it. At most a few pages of profiles are held at once,
+ * no matter how many groups there are.
+ *
+ * A run can be stopped early. Fetching stops between pages and the pages already fetched are finished, so a later
+ * run can continue from {@link Result#getNextPage()}.
+ */
+public class SyncPipeline {
+
+    private static final Logger LOG = LogManager.getLogger(SyncPipeline.class);
+
+    private static final List<GroupProfile> END_OF_PAGES = new ArrayList<>();
+    private static final PendingDocument END_OF_DOCUMENTS = new PendingDocument(0, null, null);
+
+    /**
+     * Receives each document when its image is done.
+     */
+    public interface DocumentHandler {
+        void accept(GroupSearchDocument document) throws IOException;
+    }
+
+    /**
+     * Counts from one run of the pipeline.
+     */
+    public static class Result {
+        private boolean complete;
+        private int nextPage;
+        private int pages;
+        private int fetched;
+        private int skipped;
+        private final Map<ImageMirror.Status, Integer> imageStats = new EnumMap<>(ImageMirror.Status.class);
+
+        Result() {
+            for (ImageMirror.Status status : ImageMirror.Status.values()) {
+                imageStats.put(status, 0);
+            }
+        }
+
+        /**
+         * @return true if every page was processed, false if the run was stopped early.
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * @return The first page which was not processed.
+         */
+        public int getNextPage() {
+            return nextPage;
+        }
+
+        public int getPages() {
+            return pages;
+        }
+
+        /**
+         * @return The number of profiles fetched from CCB.
+         */
+        public int getFetched() {
+            return fetched;
+        }
+
+        /**
+         * @return The number of profiles removed by the filter.
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public int getImageCount(ImageMirror.Status status) {
+            return imageStats.get(status);
+        }
+    }
+
+    private final CCBAPI ccbClient;
+    private final Predicate<GroupProfile> filter;
+    private final Supplier<Function<GroupProfile, GroupSearchDocument>> adapterFactory;
+    private final ImageMirror imageMirror;
+    private final String baseUrl;
+    private final int pageSize;
+    private final int queueDepth;
+    private final MetricsRegistry metrics;
+
+    /**
+     * @param ccbClient The CCB API client.
+     * @param filter Decides which groups are listed.
+     * @param adapterFactory Creates the function which converts profiles to search documents. A new one is
+     *                       created for each run, so anything it pools is released when the run ends.
+     * @param imageMirror Copies group images.
+     * @param baseUrl Prefix to prepend to image urls.
+     * @param pageSize The number of profiles to request at a time.
+     * @param queueDepth The number of pages which may wait between fetch and adapt.
+     * @param metrics Receives the timings of each stage.
+     */
+    public SyncPipeline(CCBAPI ccbClient, Predicate<GroupProfile> filter,
+                        Supplier<Function<GroupProfile, GroupSearchDocument>> adapterFactory, ImageMirror imageMirror,
+                        String baseUrl, int pageSize, int queueDepth, MetricsRegistry metrics) {
+        this.ccbClient = ccbClient;
+        this.filter = filter;
+        this.adapterFactory = adapterFactory;
+        this.imageMirror = imageMirror;
+        this.baseUrl = baseUrl;
+        this.pageSize = pageSize;
+        this.queueDepth = queueDepth;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Run every stage until all the profiles matching request are processed.
+     *
+     * @param request The profiles to fetch. Paging is set by the pipeline.
+     * @param firstPage The page to start from. 1 unless continuing an earlier run.
+     * @param stop Checked before each page after the first. Returning true ends the run early.
+     * @param manifest The manifest of previously copied images. It is updated as images are copied.
+     * @param groups Documents by group id. Listed groups are added or replaced and unlisted groups are removed.
+     * @param handler Called with each new document, on the caller's thread.
+     * @return Counts from the run.
+     */
+    public Result run(GetGroupProfilesRequest request, int firstPage, BooleanSupplier stop, ImageManifest manifest,
+                      Map<Integer, GroupSearchDocument> groups, DocumentHandler handler) throws IOException {
+        final Result result = new Result();
+        final Function<GroupProfile, GroupSearchDocument> adapter = adapterFactory.get();
+        final BlockingQueue<List<GroupProfile>> pages = new ArrayBlockingQueue<>(queueDepth);
+        final BlockingQueue<PendingDocument> documents = new ArrayBlockingQueue<>(queueDepth * pageSize);
+
+        final ExecutorService stages = Executors.newFixedThreadPool(2, new DaemonThreadFactory());
+        try {
+            final Future<?> fetch = stages.submit(() -> {
+                fetch(request, firstPage, stop, pages, result);
+                return null;
+            });
+            final Future<?> adapt = stages.submit(() -> {
+                adapt(pages, adapter, documents, manifest, result);
+                return null;
+            });
+
+            serialize(documents, groups, manifest, handler, result);
+
+            // A failed adapt stage leaves fetch blocked on a full queue, so check adapt first.
+            await(adapt);
+            await(fetch);
+            return result;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while syncing groups", e);
+
+        } finally {
+            stages.shutdownNow();
+        }
+    }
+
+    private void fetch(GetGroupProfilesRequest request, int firstPage, BooleanSupplier stop,
+                       BlockingQueue<List<GroupProfile>> pages, Result result)
+            throws IOException, InterruptedException {
+        try {
+            int page = firstPage;
+            List<GroupProfile> profiles;
+            do {
+                if (page > firstPage && stop.getAsBoolean()) {
+                    LOG.info("Stopping before page " + page + ".");
+                    result.nextPage = page;
+                    return;
+                }
+                request.withPage(page).withPerPage(pageSize);
+                final long start = System.nanoTime();
+                try {
+                    profiles = ccbClient.getGroupProfiles(request).getGroups();
+                } catch (IOException | RuntimeException e) {
+                    metrics.count("ProfileFetchErrors", 1);
+                    throw e;
+                }
+                metrics.recordTime("ProfileFetchTime", MetricsRegistry.since(start));
+                metrics.count("ProfilesFetched", profiles.size());
+                result.pages++;
+                result.fetched += profiles.size();
+                if (!profiles.isEmpty()) {
+                    pages.put(profiles);
+                }
+                page++;
+            } while (profiles.size() >= pageSize);
+            result.complete = true;
+            result.nextPage = page;
+
+        } finally {
+            pages.put(END_OF_PAGES);
+        }
+    }
+
+    private void adapt(BlockingQueue<List<GroupProfile>> pages, Function<GroupProfile, GroupSearchDocument> adapter,
+                       BlockingQueue<PendingDocument> documents, ImageManifest manifest, Result result)
+            throws InterruptedException {
+        try {
+            List<GroupProfile> page;
+            while ((page = pages.take()) != END_OF_PAGES) {
+                for (GroupProfile profile : page) {
+                    final long filterStart = System.nanoTime();
+                    final boolean listed = filter.test(profile);
+                    metrics.recordTime("FilterTime", MetricsRegistry.since(filterStart));
+                    if (!listed) {
+                        result.skipped++;
+                        metrics.count("GroupsSkipped", 1);
+                        documents.put(new PendingDocument(profile.getId(), null, null));
+                        continue;
+                    }
+
+                    // Transform GroupProfile to Search Document.
+                    final long adaptStart = System.nanoTime();
+                    final GroupSearchDocument document = adapter.apply(profile);
+                    metrics.recordTime("AdaptTime", MetricsRegistry.since(adaptStart));
+
+                    // Queue the GroupProfile image to be saved while the remaining groups are adapted.
+                    document.setImageUrl(null);
+                    Future<ImageMirror.Status> image = null;
+                    if (profile.getImageUrl() != null && !profile.getImageUrl().isEmpty()) {
+                        image = imageMirror.submit(profile.getId(), profile.getImageUrl(), manifest);
+                    } else {
+                        manifest.remove(profile.getId());
+                    }
+
+                    documents.put(new PendingDocument(profile.getId(), document, image));
+                }
+            }
+
+        } finally {
+            documents.put(END_OF_DOCUMENTS);
+        }
+    }
+
+    private void serialize(BlockingQueue<PendingDocument> documents, Map<Integer, GroupSearchDocument> groups,
+                           ImageManifest manifest, DocumentHandler handler, Result result)
+            throws IOException, InterruptedException {
+        PendingDocument pending;
+        while ((pending = documents.take()) != END_OF_DOCUMENTS) {
+            final GroupSearchDocument document = pending.document;
+            if (document == null) {
+                groups.remove(pending.groupId);
+                continue;
+            }
+
+            if (pending.image != null) {
+                final long start = System.nanoTime();
+                result.imageStats.merge(awaitImage(pending.image), 1, Integer::sum);
+                metrics.recordTime("ImageWaitTime", MetricsRegistry.since(start));
+            }
+
+            // A failed copy still leaves the previous copy of the image in place.
+            if (manifest.contains(document.getId())) {
+                document.setImageUrl(baseUrl + "/" + ImageMirror.getImageKey(document.getId()));
+            }
+
+            handler.accept(document);
+            groups.put(document.getId(), document);
+        }
+    }
+
+    private ImageMirror.Status awaitImage(Future<ImageMirror.Status> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            LOG.error("Unexpected image copy failure: " + e.getMessage(), e);
+            return ImageMirror.Status.FAILED;
+        }
+    }
+
+    private static void await(Future<?> stage) throws IOException, InterruptedException {
+        try {
+            stage.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * A document waiting for its image, or a group to remove when document is null.
+     */
+    private static class PendingDocument {
+        final int groupId;
+        final GroupSearchDocument document;
+        final Future<ImageMirror.Status> image;
+
+        PendingDocument(int groupId, GroupSearchDocument document, Future<ImageMirror.Status> image) {
+            this.groupId = groupId;
+            this.document = document;
+            this.image = image;
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread t = new Thread(r, "sync-pipeline-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
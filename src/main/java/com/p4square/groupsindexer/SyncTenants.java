@@ -0,0 +1,256 @@
+package com.p4square.groupsindexer;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.p4square.ccbapi.CCBAPI;
+import com.p4square.ccbapi.CCBAPIClient;
+import com.p4square.groupsindexer.metrics.EmfMetricsRegistry;
+import com.p4square.groupsindexer.model.TenantConfig;
+import com.p4square.groupsindexer.model.TenantsConfig;
+import com.p4square.groupsindexer.output.OutputSink;
+import com.p4square.groupsindexer.output.PrefixedOutputSink;
+import com.p4square.groupsindexer.output.S3OutputSink;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * SyncTenants is a scheduled lambda which syncs several CCB instances in one run.
+ *
+ * Each tenant is a {@link SyncGroups} with its own CCB client, output prefix, search fields cache and metrics.
+ * Tenants sync concurrently. Their CCB lookups and image copies share one bounded pool and their shard uploads
+ * share another. Both pools take work from the tenants in turn (see {@link FairExecutor}), so a large tenant can't
+ * starve a small one. A tenant which fails, or can't be configured, is logged and does not stop the others.
+ *
+ * The tenants are listed in a JSON file:
+ * <pre>
+ * {"tenants": [
+ *   {"id": "north", "output-prefix": "north/", "settings": {
+ *     "CCBAPIURL": "https://north.ccbchurch.com/api.php", "CCBAPIUser": "api",
+ *     "CCBAPIPassword": "${NORTH_CCB_PASSWORD}", "BASE_URL": "https://groups.example.com/north"}}
+ * ]}
+ * </pre>
+ *
+ * A tenant's settings are any of the {@link SyncGroups} settings and override the environment, so settings shared
+ * by every tenant can be set once in the environment. A value of the form ${NAME} is read from the environment
+ * variable NAME, which keeps secrets out of the file. BASE_URL must include the tenant's output prefix.
+ *
+ * Required (custom) environment variables:
+ * <ul>
+ *  <li>TENANTS_CONFIG - Path of the tenants file.</li>
+ *  <li>OUTPUT_BUCKET - Every tenant publishes to this bucket, under its output prefix.</li>
+ * </ul>
+ *
+ * Optional environment variables:
+ * <ul>
+ *  <li>TENANT_CONCURRENCY - Number of tenants to sync at once (default 4).</li>
+ *  <li>SHARED_HTTP_WORKERS - Threads for the CCB lookups and image copies of every tenant. Replaces
+ *      IMAGE_WORKERS (default 16).</li>
+ *  <li>SHARED_UPLOAD_WORKERS - Threads for the shard uploads of every tenant. Replaces SHARD_WORKERS
+ *      (default 8).</li>
+ * </ul>
+ */
+public class SyncTenants implements RequestHandler<ScheduledEvent, String> {
+
+    private static final Logger LOG = LogManager.getLogger(SyncTenants.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    static {
+        MAPPER.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    /**
+     * Creates the CCB client of a tenant.
+     */
+    public interface ClientFactory {
+        /**
+         * @param settings The tenant's settings.
+         */
+        CCBAPI create(Function<String, String> settings) throws Exception;
+    }
+
+    private final Map<String, SyncGroups> tenants;
+    private final Map<String, String> misconfigured;
+    private final ExecutorService tenantWorkers;
+
+    public SyncTenants() throws IOException {
+        this(readConfig(System.getenv("TENANTS_CONFIG")),
+                new S3OutputSink(AmazonS3ClientBuilder.defaultClient(), System.getenv("OUTPUT_BUCKET")),
+                System::getenv,
+                settings -> new CCBAPIClient(new URI(settings.apply("CCBAPIURL")),
+                        settings.apply("CCBAPIUser"), settings.apply("CCBAPIPassword")));
+    }
+
+    /**
+     * @param config The tenants.
+     * @param outputSink Where every tenant publishes, under its output prefix.
+     * @param environment Looks up the settings listed above, and tenant settings the tenant doesn't set itself.
+     * @param clientFactory Creates the CCB client of each tenant.
+     * @throws IllegalArgumentException If tenant ids or output prefixes are missing or repeated.
+     */
+    public SyncTenants(TenantsConfig config, OutputSink outputSink, Function<String, String> environment,
+                       ClientFactory clientFactory) {
+        validate(config);
+
+        final FairExecutor httpWorkers = new FairExecutor("tenant-http",
+                SyncGroups.getIntSetting(environment, "SHARED_HTTP_WORKERS", 16));
+        final FairExecutor uploadWorkers = new FairExecutor("tenant-upload",
+                SyncGroups.getIntSetting(environment, "SHARED_UPLOAD_WORKERS", 8));
+        final String namespace = environment.apply("METRICS_NAMESPACE") != null
+                ? environment.apply("METRICS_NAMESPACE")
+                : "GroupsIndexer";
+
+        this.tenants = new LinkedHashMap<>();
+        this.misconfigured = new LinkedHashMap<>();
+        for (TenantConfig tenant : config.getTenants()) {
+            final String id = tenant.getId();
+            try {
+                final Function<String, String> settings = getTenantSettings(tenant, environment);
+                final Map<String, String> dimensions = new LinkedHashMap<>();
+                dimensions.put("FunctionName", environment.apply("AWS_LAMBDA_FUNCTION_NAME"));
+                dimensions.put("Tenant", id);
+
+                tenants.put(id, new SyncGroups(clientFactory.create(settings),
+                        new PrefixedOutputSink(outputSink, getOutputPrefix(tenant)),
+                        settings,
+                        new EmfMetricsRegistry(namespace, dimensions),
+                        httpWorkers.forTenant(id),
+                        uploadWorkers.forTenant(id)));
+
+            } catch (Exception e) {
+                LOG.error("Failed to configure tenant " + id + ": " + e.getMessage(), e);
+                misconfigured.put(id, "misconfigured");
+            }
+        }
+
+        final int concurrency = Math.max(1, SyncGroups.getIntSetting(environment, "TENANT_CONCURRENCY", 4));
+        this.tenantWorkers = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "tenant-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    @Override
+    public String handleRequest(ScheduledEvent event, Context context) {
+        final Map<String, Future<String>> runs = new LinkedHashMap<>();
+        for (Map.Entry<String, SyncGroups> tenant : tenants.entrySet()) {
+            runs.put(tenant.getKey(), tenantWorkers.submit(() -> sync(tenant.getKey(), tenant.getValue(),
+                    event, context)));
+        }
+
+        final Map<String, String> results = new LinkedHashMap<>(misconfigured);
+        for (Map.Entry<String, Future<String>> run : runs.entrySet()) {
+            try {
+                results.put(run.getKey(), run.getValue().get());
+            } catch (ExecutionException e) {
+                results.put(run.getKey(), "failed");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted waiting for tenant " + run.getKey(), e);
+            }
+        }
+
+        LOG.info("Synced tenants: " + results);
+        return results.toString();
+    }
+
+    private static String sync(String id, SyncGroups syncGroups, ScheduledEvent event, Context context) {
+        LOG.info("Syncing tenant " + id + ".");
+        try {
+            final String result = syncGroups.handleRequest(event, context);
+            LOG.info("Synced tenant " + id + ": " + result);
+            return result;
+
+        } catch (RuntimeException e) {
+            LOG.error("Sync of tenant " + id + " failed: " + e.getMessage(), e);
+            return "failed";
+        }
+    }
+
+    /**
+     * @return The tenant's settings, falling back to the environment.
+     */
+    private static Function<String, String> getTenantSettings(TenantConfig tenant,
+                                                              Function<String, String> environment) {
+        final Map<String, String> overrides = tenant.getSettings() != null
+                ? tenant.getSettings()
+                : new LinkedHashMap<>();
+        return name -> {
+            if ("TENANT_ID".equals(name)) {
+                return tenant.getId();
+            }
+
+            final String value = overrides.get(name);
+            if (value == null) {
+                return environment.apply(name);
+            } else if (value.startsWith("${") && value.endsWith("}")) {
+                return environment.apply(value.substring(2, value.length() - 1));
+            }
+            return value;
+        };
+    }
+
+    private static String getOutputPrefix(TenantConfig tenant) {
+        final String prefix = tenant.getOutputPrefix() != null ? tenant.getOutputPrefix() : "";
+        return prefix.isEmpty() || prefix.endsWith("/") ? prefix : prefix + "/";
+    }
+
+    private static void validate(TenantsConfig config) {
+        final Set<String> ids = new HashSet<>();
+        final List<String> prefixes = new ArrayList<>();
+        for (TenantConfig tenant : config.getTenants()) {
+            if (tenant.getId() == null || tenant.getId().isEmpty()) {
+                throw new IllegalArgumentException("Every tenant must have an id.");
+            }
+            if (!ids.add(tenant.getId())) {
+                throw new IllegalArgumentException("Tenant " + tenant.getId() + " is listed more than once.");
+            }
+
+            // One tenant's prefix must not contain another's, or each would delete the other's documents.
+            final String prefix = getOutputPrefix(tenant);
+            for (String other : prefixes) {
+                if (prefix.startsWith(other) || other.startsWith(prefix)) {
+                    throw new IllegalArgumentException("Tenant " + tenant.getId() + " has output prefix \"" +
+                            prefix + "\", which overlaps another tenant's \"" + other + "\".");
+                }
+            }
+            prefixes.add(prefix);
+        }
+    }
+
+    private static TenantsConfig readConfig(String path) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("TENANTS_CONFIG is not set.");
+        }
+        try (InputStream in = Files.newInputStream(Paths.get(path))) {
+            return MAPPER.readValue(in, TenantsConfig.class);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.p4square.groupsindexer.ccb;
+
+/**
+ * AimdLimiter adapts the number of concurrent requests to what the server can take.
+ *
+ * Each successful request raises the limit by 1/limit, so the limit grows by about one for every round of
+ * requests. A request which was throttled or failed from overload halves it. Only requests started since the last
+ * decrease can decrease it again, so a burst of failures from one overloaded moment halves the limit once.
+ */
+public class AimdLimiter {
+
+    /**
+     * How a request ended.
+     */
+    public enum Outcome {
+        /** The request succeeded. */
+        SUCCESS,
+        /** The request was throttled or failed in a way which suggests the server is overloaded. */
+        DROPPED,
+        /** The request failed for a reason unrelated to load. The limit is not changed. */
+        IGNORED
+    }
+
+    private static final double BACKOFF_RATIO = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private int inFlight;
+    private int epoch;
+
+    /**
+     * @param initialLimit The limit to start with.
+     * @param minLimit The lowest the limit can fall.
+     * @param maxLimit The highest the limit can rise.
+     */
+    public AimdLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+    }
+
+    /**
+     * Wait until another request may start.
+     *
+     * @return A token to pass to {@link #release(int, Outcome)} when the request ends.
+     */
+    public synchronized int acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+        return epoch;
+    }
+
+    /**
+     * Record the end of a request started with {@link #acquire()}.
+     *
+     * @param token The token returned by acquire.
+     * @param outcome How the request ended.
+     */
+    public synchronized void release(int token, Outcome outcome) {
+        inFlight--;
+        switch (outcome) {
+            case SUCCESS:
+                limit = Math.min(maxLimit, limit + 1 / limit);
+                break;
+            case DROPPED:
+                if (token == epoch) {
+                    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                    epoch++;
+                }
+                break;
+            default:
+                break;
+        }
+        notifyAll();
+    }
+
+    /**
+     * @return The number of requests which may currently run at once.
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+}
@@ -0,0 +1,15 @@
+package com.p4square.groupsindexer.ccb;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of calling CCB while the {@link CircuitBreaker} is open.
+ */
+public class CircuitOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,306 @@
+package com.p4square.groupsindexer.ccb;
+
+import com.p4square.ccbapi.CCBAPI;
+import com.p4square.ccbapi.model.GetCustomFieldLabelsResponse;
+import com.p4square.ccbapi.model.GetGroupProfilesRequest;
+import com.p4square.ccbapi.model.GetGroupProfilesResponse;
+import com.p4square.ccbapi.model.GetIndividualProfilesRequest;
+import com.p4square.ccbapi.model.GetIndividualProfilesResponse;
+import com.p4square.ccbapi.model.GetLookupTableRequest;
+import com.p4square.ccbapi.model.GetLookupTableResponse;
+import com.p4square.ccbapi.model.UpdateIndividualProfileRequest;
+import com.p4square.ccbapi.model.UpdateIndividualProfileResponse;
+import com.p4square.groupsindexer.metrics.MetricsRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ResilientCCBAPI wraps a {@link CCBAPI} client to keep calls within what CCB can take.
+ *
+ * <ul>
+ *  <li>Concurrent calls are limited by an {@link AimdLimiter}, which raises the limit while CCB is healthy and
+ *      halves it when calls are throttled or fail.</li>
+ *  <li>Reads which are throttled, fail with a 5xx status or fail on the network are retried after a jittered,
+ *      exponentially growing delay. Profile updates are never retried.</li>
+ *  <li>Identical lookup table and custom field label calls made while one is in flight wait for its result
+ *      instead of calling CCB again.</li>
+ *  <li>A {@link CircuitBreaker} fails calls immediately with a {@link CircuitOpenException} while CCB keeps
+ *      failing. Throttled calls don't count as failures.</li>
+ * </ul>
+ *
+ * The CCB client reports a response with an unexpected status as an IOException whose message is either the
+ * response's status line, such as "HTTP/1.1 503 Service Unavailable", or HttpURLConnection's
+ * "Server returned HTTP response code: 503 for URL: ...". A 429 status is throttling and a 5xx status is a
+ * server error. Only those two forms at the start of the message, of the exception or one of its causes, are
+ * recognized, so numbers elsewhere in a message are never mistaken for a status. Socket timeouts, connection
+ * failures and unknown hosts are network failures. Other IOExceptions are passed through without a retry.
+ */
+public class ResilientCCBAPI implements CCBAPI {
+
+    private static final Logger LOG = LogManager.getLogger(ResilientCCBAPI.class);
+
+    private static final long MAX_BACKOFF_MS = 30000;
+    private static final Pattern STATUS_MESSAGE = Pattern.compile(
+            "(?:HTTP(?:/\\d(?:\\.\\d)?)?|Server returned HTTP response code:) ([1-5]\\d\\d)(?: |$)");
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    /**
+     * The kinds of failed call.
+     */
+    enum Failure {
+        /** CCB asked us to slow down. */
+        THROTTLED,
+        /** CCB or the network failed. */
+        UNAVAILABLE,
+        /** The call itself was wrong. Retrying won't help. */
+        PERMANENT
+    }
+
+    private interface Call<T> {
+        T call() throws IOException;
+    }
+
+    private final CCBAPI delegate;
+    private final AimdLimiter limiter;
+    private final CircuitBreaker breaker;
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final MetricsRegistry metrics;
+
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight;
+
+    /**
+     * @param delegate The client which calls CCB.
+     * @param limiter Limits concurrent calls.
+     * @param breaker Stops calls while CCB keeps failing.
+     * @param maxAttempts The most times a read is attempted.
+     * @param backoffMs The delay before the first retry. Each retry waits up to twice as long as the last.
+     * @param metrics Receives call times, retries and failures.
+     */
+    public ResilientCCBAPI(CCBAPI delegate, AimdLimiter limiter, CircuitBreaker breaker, int maxAttempts,
+                           long backoffMs, MetricsRegistry metrics) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+        this.breaker = breaker;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMs = Math.max(1, backoffMs);
+        this.metrics = metrics;
+        this.inFlight = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public GetCustomFieldLabelsResponse getCustomFieldLabels() throws IOException {
+        return coalesce("custom-field-labels",
+                () -> call("getCustomFieldLabels", delegate::getCustomFieldLabels, true));
+    }
+
+    @Override
+    public GetLookupTableResponse getLookupTable(GetLookupTableRequest request) throws IOException {
+        return coalesce("lookup-table-" + request.getType(),
+                () -> call("getLookupTable", () -> delegate.getLookupTable(request), true));
+    }
+
+    @Override
+    public GetIndividualProfilesResponse getIndividualProfiles(GetIndividualProfilesRequest request)
+            throws IOException {
+        return call("getIndividualProfiles", () -> delegate.getIndividualProfiles(request), true);
+    }
+
+    @Override
+    public UpdateIndividualProfileResponse updateIndividualProfile(UpdateIndividualProfileRequest request)
+            throws IOException {
+        return call("updateIndividualProfile", () -> delegate.updateIndividualProfile(request), false);
+    }
+
+    @Override
+    public GetGroupProfilesResponse getGroupProfiles(GetGroupProfilesRequest request) throws IOException {
+        return call("getGroupProfiles", () -> delegate.getGroupProfiles(request), true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /**
+     * @return The number of calls currently allowed to run at once.
+     */
+    public int getConcurrencyLimit() {
+        return limiter.getLimit();
+    }
+
+    private <T> T call(String name, Call<T> call, boolean retry) throws IOException {
+        final int attempts = retry ? maxAttempts : 1;
+        for (int attempt = 1; ; attempt++) {
+            if (!breaker.tryAcquire()) {
+                metrics.count("CcbCircuitOpen", 1);
+                throw new CircuitOpenException("CCB is failing. Not calling " + name + ".");
+            }
+
+            final int token;
+            try {
+                token = limiter.acquire();
+            } catch (InterruptedException e) {
+                breaker.onIgnored();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting to call " + name + ".");
+            }
+
+            final long start = System.nanoTime();
+            try {
+                final T result = call.call();
+                limiter.release(token, AimdLimiter.Outcome.SUCCESS);
+                breaker.onSuccess();
+                metrics.recordTime("CcbCallTime", MetricsRegistry.since(start));
+                return result;
+
+            } catch (IOException e) {
+                final Failure failure = classify(e);
+                if (failure == Failure.PERMANENT) {
+                    limiter.release(token, AimdLimiter.Outcome.IGNORED);
+                    breaker.onIgnored();
+                    throw e;
+                }
+
+                // Throttling only means CCB wants fewer calls, which the limiter and backoff take care of.
+                limiter.release(token, AimdLimiter.Outcome.DROPPED);
+                if (failure == Failure.THROTTLED) {
+                    breaker.onIgnored();
+                    metrics.count("CcbThrottled", 1);
+                } else {
+                    breaker.onFailure();
+                    metrics.count("CcbErrors", 1);
+                }
+                if (attempt >= attempts) {
+                    throw e;
+                }
+
+                final long delay = getBackoff(attempt, failure);
+                LOG.warn("CCB " + name + " failed (" + e.getMessage() + "). Attempt " + attempt + " of " +
+                        attempts + ". Retrying in " + delay + " ms with a concurrency limit of " +
+                        limiter.getLimit() + ".");
+                sleep(delay);
+                metrics.count("CcbRetries", 1);
+
+            } catch (RuntimeException e) {
+                limiter.release(token, AimdLimiter.Outcome.IGNORED);
+                breaker.onIgnored();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Make call unless an identical call is in flight, in which case wait for that call's result.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T coalesce(String key, Call<T> call) throws IOException {
+        final CompletableFuture<Object> mine = new CompletableFuture<>();
+        final CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            metrics.count("CcbCoalesced", 1);
+            return (T) await(existing);
+        }
+
+        try {
+            final T result = call.call();
+            mine.complete(result);
+            return result;
+
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> future) throws IOException {
+        try {
+            return future.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for CCB.");
+
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * @return A delay between half and all of the attempt's exponential backoff. Throttled calls back off one
+     *         step further.
+     */
+    private long getBackoff(int attempt, Failure failure) {
+        final int exponent = Math.min(20, attempt - 1 + (failure == Failure.THROTTLED ? 1 : 0));
+        final long ceiling = Math.min(MAX_BACKOFF_MS, backoffMs << exponent);
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private static void sleep(long delay) throws InterruptedIOException {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to retry.");
+        }
+    }
+
+    private static Failure classify(IOException e) {
+        if (e instanceof CircuitOpenException) {
+            return Failure.PERMANENT;
+        }
+        if (e instanceof SocketTimeoutException) {
+            return Failure.UNAVAILABLE;
+        }
+        if (e instanceof InterruptedIOException) {
+            return Failure.PERMANENT;
+        }
+        if (e instanceof SocketException || e instanceof UnknownHostException) {
+            return Failure.UNAVAILABLE;
+        }
+
+        final int status = getStatusCode(e);
+        if (status == TOO_MANY_REQUESTS) {
+            return Failure.THROTTLED;
+        }
+        if (status >= 500) {
+            return Failure.UNAVAILABLE;
+        }
+        return Failure.PERMANENT;
+    }
+
+    /**
+     * @return The HTTP status which starts the message of e or one of its causes, or -1 if there is none.
+     */
+    static int getStatusCode(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause() != t ? t.getCause() : null) {
+            if (t.getMessage() != null) {
+                final Matcher matcher = STATUS_MESSAGE.matcher(t.getMessage().trim());
+                if (matcher.lookingAt()) {
+                    return Integer.parseInt(matcher.group(1));
+                }
+            }
+        }
+        return -1;
+    }
+}
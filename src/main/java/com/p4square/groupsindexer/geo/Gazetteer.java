@@ -0,0 +1,141 @@
+package com.p4square.groupsindexer.geo;
+
+import com.p4square.groupsindexer.model.GeoPoint;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Gazetteer resolves postal codes and places to coordinates from an offline table.
+ *
+ * The table is in the GeoNames postal code format: tab separated lines of country code, postal code, place name,
+ * state name, state code, three more admin levels (name and code each), latitude, longitude and accuracy. A place
+ * is located at the average of its postal codes.
+ */
+public class Gazetteer {
+
+    private static final int POSTAL_CODE = 1;
+    private static final int PLACE_NAME = 2;
+    private static final int STATE_NAME = 3;
+    private static final int STATE_CODE = 4;
+    private static final int LATITUDE = 9;
+    private static final int LONGITUDE = 10;
+
+    private final Map<String, GeoPoint> postalCodes;
+    private final Map<String, GeoPoint> places;
+
+    private Gazetteer(Map<String, GeoPoint> postalCodes, Map<String, GeoPoint> places) {
+        this.postalCodes = postalCodes;
+        this.places = places;
+    }
+
+    /**
+     * Read a table in the GeoNames postal code format. Lines which can't be parsed are skipped.
+     *
+     * @param in The table. The caller must close the stream.
+     */
+    public static Gazetteer read(InputStream in) throws IOException {
+        final Map<String, GeoPoint> postalCodes = new HashMap<>();
+        final Map<String, double[]> placeSums = new HashMap<>();
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            final String[] columns = line.split("\t", -1);
+            if (columns.length <= LONGITUDE) {
+                continue;
+            }
+
+            final double latitude;
+            final double longitude;
+            try {
+                latitude = Double.parseDouble(columns[LATITUDE]);
+                longitude = Double.parseDouble(columns[LONGITUDE]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+
+            final String postalCode = normalizePostalCode(columns[POSTAL_CODE]);
+            if (postalCode != null) {
+                postalCodes.putIfAbsent(postalCode, new GeoPoint(latitude, longitude, GeoPoint.POSTAL_CODE));
+            }
+            addToPlace(placeSums, columns[PLACE_NAME], columns[STATE_CODE], latitude, longitude);
+            addToPlace(placeSums, columns[PLACE_NAME], columns[STATE_NAME], latitude, longitude);
+        }
+
+        final Map<String, GeoPoint> places = new HashMap<>(placeSums.size() * 2);
+        for (Map.Entry<String, double[]> entry : placeSums.entrySet()) {
+            final double[] sum = entry.getValue();
+            places.put(entry.getKey(), new GeoPoint(sum[0] / sum[2], sum[1] / sum[2], GeoPoint.CITY));
+        }
+        return new Gazetteer(postalCodes, places);
+    }
+
+    /**
+     * @return The location of the postal code, or null if it is unknown.
+     */
+    public GeoPoint findPostalCode(String postalCode) {
+        final String key = normalizePostalCode(postalCode);
+        return key != null ? postalCodes.get(key) : null;
+    }
+
+    /**
+     * @param city The place name.
+     * @param state The state code or name.
+     * @return The location of the place, or null if it is unknown.
+     */
+    public GeoPoint findPlace(String city, String state) {
+        final String key = getPlaceKey(city, state);
+        return key != null ? places.get(key) : null;
+    }
+
+    /**
+     * @return The number of postal codes in the table.
+     */
+    public int size() {
+        return postalCodes.size();
+    }
+
+    /**
+     * @return The postal code in upper case without spaces, and US ZIP+4 codes cut to five digits. Null for blank
+     *         codes.
+     */
+    static String normalizePostalCode(String postalCode) {
+        if (postalCode == null) {
+            return null;
+        }
+        final String code = postalCode.replace(" ", "").toUpperCase(Locale.ROOT);
+        if (code.isEmpty()) {
+            return null;
+        }
+        if (code.length() == 10 && code.charAt(5) == '-') {
+            return code.substring(0, 5);
+        }
+        return code;
+    }
+
+    static String getPlaceKey(String city, String state) {
+        if (city == null || city.trim().isEmpty()) {
+            return null;
+        }
+        final String stateKey = state != null ? state.trim().toLowerCase(Locale.ROOT) : "";
+        return city.trim().toLowerCase(Locale.ROOT) + "|" + stateKey;
+    }
+
+    private static void addToPlace(Map<String, double[]> placeSums, String city, String state, double latitude,
+                                   double longitude) {
+        final String key = getPlaceKey(city, state);
+        if (key != null) {
+            final double[] sum = placeSums.computeIfAbsent(key, k -> new double[3]);
+            sum[0] += latitude;
+            sum[1] += longitude;
+            sum[2]++;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.p4square.groupsindexer.geo;
+
+import com.p4square.groupsindexer.model.GeoPoint;
+import com.p4square.groupsindexer.model.GeocodeCache;
+import com.p4square.groupsindexer.model.GroupSearchDocument;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.UnaryOperator;
+
+/**
+ * Geocoder sets the approximate location of each group from its postal code, or its city and state.
+ *
+ * Locations come from a {@link Gazetteer}, which is only loaded when an address is not in the {@link GeocodeCache}.
+ * Most runs see no new addresses and never load it.
+ */
+public class Geocoder implements UnaryOperator<GroupSearchDocument> {
+
+    private static final Logger LOG = LogManager.getLogger(Geocoder.class);
+
+    /**
+     * Loads the gazetteer.
+     */
+    public interface GazetteerLoader {
+        Gazetteer load() throws IOException;
+    }
+
+    private final GazetteerLoader loader;
+    private final Duration maxCacheAge;
+
+    private Gazetteer gazetteer;
+    private boolean gazetteerFailed;
+
+    private GeocodeCache cache;
+    private boolean changed;
+    private int hits;
+    private int misses;
+    private int unresolved;
+
+    /**
+     * @param loader Loads the gazetteer the first time it is needed.
+     * @param maxCacheAge How long resolved addresses are trusted before they are resolved again.
+     */
+    public Geocoder(GazetteerLoader loader, Duration maxCacheAge) {
+        this.loader = loader;
+        this.maxCacheAge = maxCacheAge;
+        this.cache = new GeocodeCache();
+        this.cache.setCreated(Instant.now());
+    }
+
+    /**
+     * Start a run with a cache loaded from the previous run.
+     *
+     * @param previous The saved cache, or null if there is none.
+     * @param now The current time.
+     */
+    public synchronized void begin(GeocodeCache previous, Instant now) {
+        if (previous != null && previous.getCreated() != null &&
+                now.isBefore(previous.getCreated().plus(maxCacheAge))) {
+            cache = previous;
+            changed = false;
+        } else {
+            cache = new GeocodeCache();
+            cache.setCreated(now);
+            changed = previous != null;
+        }
+        hits = 0;
+        misses = 0;
+        unresolved = 0;
+        gazetteerFailed = false;
+    }
+
+    /**
+     * Set the location of document from its address.
+     *
+     * @return document.
+     */
+    @Override
+    public GroupSearchDocument apply(GroupSearchDocument document) {
+        document.setLocation(resolve(document.getLocationCity(), document.getLocationState(),
+                document.getLocationPostalCode()));
+        return document;
+    }
+
+    /**
+     * @return The approximate location of the address, or null if it can't be resolved.
+     */
+    public synchronized GeoPoint resolve(String city, String state, String postalCode) {
+        final String postalKey = Gazetteer.normalizePostalCode(postalCode);
+        final String placeKey = Gazetteer.getPlaceKey(city, state);
+        if (postalKey == null && placeKey == null) {
+            return null;
+        }
+
+        final String key = (postalKey != null ? postalKey : "") + "|" + (placeKey != null ? placeKey : "");
+        if (cache.getEntries().containsKey(key)) {
+            hits++;
+            return cache.getEntries().get(key);
+        }
+
+        final Gazetteer table = getGazetteer();
+        if (table == null) {
+            // Not cached, so the address is resolved once the gazetteer can be loaded.
+            return null;
+        }
+
+        misses++;
+        GeoPoint location = table.findPostalCode(postalCode);
+        if (location == null) {
+            location = table.findPlace(city, state);
+        }
+        if (location == null) {
+            unresolved++;
+        }
+        cache.getEntries().put(key, location);
+        changed = true;
+        return location;
+    }
+
+    /**
+     * @return The cache, or null if it has not changed since {@link #begin(GeocodeCache, Instant)}.
+     */
+    public synchronized GeocodeCache getChangedCache() {
+        return changed ? cache : null;
+    }
+
+    public synchronized String getStats() {
+        return "hits=" + hits +
+                ", misses=" + misses +
+                ", unresolved=" + unresolved +
+                ", cached=" + cache.getEntries().size() +
+                ", gazetteer=" + (gazetteer != null ? gazetteer.size() + " postal codes" : "not loaded");
+    }
+
+    private Gazetteer getGazetteer() {
+        if (gazetteer == null && !gazetteerFailed) {
+            final long start = System.currentTimeMillis();
+            try {
+                gazetteer = loader.load();
+                LOG.info("Loaded gazetteer with " + gazetteer.size() + " postal codes in " +
+                        (System.currentTimeMillis() - start) + " ms.");
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Failed to load gazetteer. Groups with new addresses won't be located: " + e.getMessage());
+                gazetteerFailed = true;
+            }
+        }
+        return gazetteer;
+    }
+}
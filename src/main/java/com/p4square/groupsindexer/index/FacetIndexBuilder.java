@@ -0,0 +1,86 @@
+package com.p4square.groupsindexer.index;
+
+import com.p4square.groupsindexer.model.Facet;
+import com.p4square.groupsindexer.model.FacetIndex;
+import com.p4square.groupsindexer.model.FacetValue;
+import com.p4square.groupsindexer.model.GroupSearchDocument;
+import com.p4square.groupsindexer.model.GroupsCollection;
+import com.p4square.groupsindexer.model.SearchField;
+import com.p4square.groupsindexer.model.StringPair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * FacetIndexBuilder builds a {@link FacetIndex} for a {@link GroupsCollection}.
+ *
+ * Every value of every search field gets a posting list, even if no group has the value, so clients can show
+ * counts for each option. Group values which are not one of the field's options are not indexed.
+ */
+public class FacetIndexBuilder implements Function<GroupsCollection, FacetIndex> {
+
+    @Override
+    public FacetIndex apply(GroupsCollection collection) {
+        final List<GroupSearchDocument> groups = collection.getGroups();
+        final List<Facet> facets = new ArrayList<>();
+
+        if (collection.getSearchFields() != null) {
+            for (SearchField field : collection.getSearchFields()) {
+                facets.add(buildFacet(field, groups));
+            }
+        }
+
+        final FacetIndex index = new FacetIndex();
+        index.setLastUpdated(collection.getLastUpdated());
+        index.setContentVersion(collection.getContentVersion());
+        index.setGroupCount(groups.size());
+        index.setFacets(facets);
+        return index;
+    }
+
+    private Facet buildFacet(SearchField field, List<GroupSearchDocument> groups) {
+        final Map<String, PostingList> postings = new LinkedHashMap<>();
+        for (StringPair option : field.getValues()) {
+            postings.put(option.getKey(), new PostingList());
+        }
+
+        for (int position = 0; position < groups.size(); position++) {
+            final String value = SearchFieldValues.getValue(groups.get(position), field.getId());
+            if (value != null) {
+                final PostingList list = postings.get(value);
+                if (list != null) {
+                    list.add(position);
+                }
+            }
+        }
+
+        final List<FacetValue> values = new ArrayList<>(postings.size());
+        for (Map.Entry<String, PostingList> entry : postings.entrySet()) {
+            values.add(new FacetValue(entry.getKey(), entry.getValue().toArray()));
+        }
+        return new Facet(field.getId(), values);
+    }
+
+    /**
+     * A growable list of ascending group positions.
+     */
+    private static class PostingList {
+        private int[] positions = new int[16];
+        private int size;
+
+        void add(int position) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(positions, size);
+        }
+    }
+}
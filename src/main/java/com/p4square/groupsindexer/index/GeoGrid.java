@@ -0,0 +1,238 @@
+package com.p4square.groupsindexer.index;
+
+import com.p4square.groupsindexer.model.GeoPoint;
+import com.p4square.groupsindexer.model.GroupSearchDocument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+/**
+ * GeoGrid finds the groups nearest a point without measuring the distance to every group.
+ *
+ * Located groups are bucketed into cells of equal latitude and longitude steps. A search measures the groups in
+ * the query's cell and then in rings of cells around it, and stops once no group outside the rings searched can
+ * be nearer than the ones found.
+ */
+public class GeoGrid {
+
+    /**
+     * The default cell size, about 5.5 km north to south.
+     */
+    public static final double DEFAULT_CELL_DEGREES = 0.05;
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+
+    private final double cellDegrees;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final Map<Long, int[]> cells;
+    private final int locatedCount;
+
+    /**
+     * @param groups The groups to index. Positions in search results are positions in this list.
+     * @param cellDegrees The size of each cell in degrees.
+     */
+    public GeoGrid(List<GroupSearchDocument> groups, double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+        this.latitudes = new double[groups.size()];
+        this.longitudes = new double[groups.size()];
+
+        final Map<Long, List<Integer>> buckets = new HashMap<>();
+        int located = 0;
+        for (int position = 0; position < groups.size(); position++) {
+            final GeoPoint location = groups.get(position).getLocation();
+            if (location == null) {
+                latitudes[position] = Double.NaN;
+                longitudes[position] = Double.NaN;
+                continue;
+            }
+
+            latitudes[position] = location.getLatitude();
+            longitudes[position] = location.getLongitude();
+            buckets.computeIfAbsent(getCell(getRow(location.getLatitude()), getColumn(location.getLongitude())),
+                    k -> new ArrayList<>()).add(position);
+            located++;
+        }
+        this.locatedCount = located;
+
+        this.cells = new HashMap<>(buckets.size() * 2);
+        for (Map.Entry<Long, List<Integer>> bucket : buckets.entrySet()) {
+            final int[] positions = new int[bucket.getValue().size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = bucket.getValue().get(i);
+            }
+            cells.put(bucket.getKey(), positions);
+        }
+    }
+
+    /**
+     * @return The number of groups with a location.
+     */
+    public int getLocatedCount() {
+        return locatedCount;
+    }
+
+    /**
+     * @return The row of the cells containing latitude.
+     */
+    public int getRow(double latitude) {
+        return (int) Math.floor(latitude / cellDegrees);
+    }
+
+    /**
+     * @return The column of the cells containing longitude.
+     */
+    public int getColumn(double longitude) {
+        return (int) Math.floor(longitude / cellDegrees);
+    }
+
+    /**
+     * @return The positions of the located groups in each cell, in ascending order, keyed by "row:col".
+     */
+    public Map<String, int[]> getCells() {
+        final Map<String, int[]> result = new TreeMap<>();
+        for (Map.Entry<Long, int[]> cell : cells.entrySet()) {
+            result.put((int) (cell.getKey() >> 32) + ":" + (int) (long) cell.getKey(), cell.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Find the located groups nearest a point.
+     *
+     * @param latitude The latitude of the point.
+     * @param longitude The longitude of the point.
+     * @param count The most groups to return.
+     * @param accept Only groups at positions accepted by this are returned.
+     * @return The positions of up to count accepted groups, nearest first.
+     */
+    public int[] nearest(double latitude, double longitude, int count, IntPredicate accept) {
+        if (count <= 0) {
+            return new int[0];
+        }
+
+        final int row = getRow(latitude);
+        final int column = getColumn(longitude);
+        final Found found = new Found(latitudes.length);
+        int visited = 0;
+
+        for (int ring = 0; ; ring++) {
+            if (8L * ring >= cells.size()) {
+                // The rings now have more cells than the grid. Measuring the rest directly is cheaper.
+                for (Map.Entry<Long, int[]> cell : cells.entrySet()) {
+                    final int cellRow = (int) (cell.getKey() >> 32);
+                    final int cellColumn = (int) (long) cell.getKey();
+                    if (Math.max(Math.abs(cellRow - row), Math.abs(cellColumn - column)) >= ring) {
+                        measure(cell.getValue(), latitude, longitude, accept, found);
+                    }
+                }
+                break;
+            }
+
+            for (int r = row - ring; r <= row + ring; r++) {
+                final boolean edgeRow = r == row - ring || r == row + ring;
+                for (int c = column - ring; c <= column + ring; c += edgeRow ? 1 : 2 * ring) {
+                    final int[] positions = cells.get(getCell(r, c));
+                    if (positions != null) {
+                        measure(positions, latitude, longitude, accept, found);
+                        visited += positions.length;
+                    }
+                }
+            }
+
+            if (visited >= locatedCount) {
+                break;
+            }
+
+            // Every unsearched group is outside the rings, so at least this far away.
+            if (found.size >= count && found.kthSmallest(count) <= getRingClearance(latitude, ring)) {
+                break;
+            }
+        }
+
+        return found.nearest(count);
+    }
+
+    /**
+     * @return The great circle distance between two points in kilometers.
+     */
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        final double dLat = Math.toRadians(latitude2 - latitude1);
+        final double dLon = Math.toRadians(longitude2 - longitude1);
+        final double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) *
+                Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * @return A lower bound on the distance from the point to any cell outside the rings searched.
+     */
+    private double getRingClearance(double latitude, int ring) {
+        // Cells are narrowest east to west at the latitude furthest from the equator within the rings.
+        final double furthest = Math.min(90, Math.abs(latitude) + (ring + 1) * cellDegrees);
+        return ring * cellDegrees * KM_PER_DEGREE * Math.cos(Math.toRadians(furthest));
+    }
+
+    private void measure(int[] positions, double latitude, double longitude, IntPredicate accept, Found found) {
+        for (int position : positions) {
+            if (accept.test(position)) {
+                found.add(position, distanceKm(latitude, longitude, latitudes[position], longitudes[position]));
+            }
+        }
+    }
+
+    private static long getCell(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+
+    /**
+     * The groups measured by a search and their distances.
+     */
+    private static class Found {
+        private int[] positions;
+        private double[] distances;
+        private int size;
+
+        Found(int capacity) {
+            this.positions = new int[Math.min(capacity, 64)];
+            this.distances = new double[positions.length];
+        }
+
+        void add(int position, double distance) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2 + 1);
+                distances = Arrays.copyOf(distances, positions.length);
+            }
+            positions[size] = position;
+            distances[size] = distance;
+            size++;
+        }
+
+        double kthSmallest(int k) {
+            final double[] sorted = Arrays.copyOf(distances, size);
+            Arrays.sort(sorted);
+            return sorted[k - 1];
+        }
+
+        int[] nearest(int count) {
+            final Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(distances[a], distances[b]));
+
+            final int[] result = new int[Math.min(count, size)];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = positions[order[i]];
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.p4square.groupsindexer.index;
+
+import com.p4square.groupsindexer.model.GeoIndex;
+import com.p4square.groupsindexer.model.GroupsCollection;
+
+import java.util.function.Function;
+
+/**
+ * GeoIndexBuilder builds a {@link GeoIndex} for a {@link GroupsCollection}.
+ *
+ * Groups without a location are left out of the cells, but are counted in group-count.
+ */
+public class GeoIndexBuilder implements Function<GroupsCollection, GeoIndex> {
+
+    private final double cellDegrees;
+
+    public GeoIndexBuilder() {
+        this(GeoGrid.DEFAULT_CELL_DEGREES);
+    }
+
+    /**
+     * @param cellDegrees The size of each cell in degrees.
+     */
+    public GeoIndexBuilder(double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+    }
+
+    @Override
+    public GeoIndex apply(GroupsCollection collection) {
+        final GeoGrid grid = new GeoGrid(collection.getGroups(), cellDegrees);
+
+        final GeoIndex index = new GeoIndex();
+        index.setLastUpdated(collection.getLastUpdated());
+        index.setContentVersion(collection.getContentVersion());
+        index.setGroupCount(collection.getGroups().size());
+        index.setLocatedCount(grid.getLocatedCount());
+        index.setCellDegrees(cellDegrees);
+        index.setCells(grid.getCells());
+        return index;
+    }
+}
@@ -0,0 +1,419 @@
+package com.p4square.groupsindexer.index;
+
+import com.p4square.groupsindexer.model.GroupSearchDocument;
+import com.p4square.groupsindexer.model.GroupsCollection;
+import com.p4square.groupsindexer.model.SearchField;
+import com.p4square.groupsindexer.model.StringPair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * GroupsQueryIndex answers filtered, sorted and paged queries over a {@link GroupsCollection} held in memory.
+ *
+ * Every search field value has a bitset of the groups with that value, stored as a long[] with one bit per group
+ * position. A query ORs the selected values of each field, ANDs the fields together and then walks a presorted
+ * order of the groups, so no per-query sorting or boxing is needed. Facet counts are reported the way search UIs
+ * expect: each field's counts apply every filter except the field's own. Queries near a point walk a
+ * {@link GeoGrid} outward from the point instead of a presorted order.
+ *
+ * The index is immutable once built and safe to query from many threads.
+ */
+public class GroupsQueryIndex {
+
+    /**
+     * Result orders. Each has a natural direction and can be reversed.
+     */
+    public enum Sort {
+        /** By name, A to Z. */
+        NAME,
+        /** Most open spots first. Groups without a capacity have unlimited spots. */
+        OPEN_SPOTS,
+        /** Most members first. */
+        MEMBERS;
+
+        /**
+         * @param value A parameter value such as "open-spots".
+         * @return The matching Sort.
+         * @throws IllegalArgumentException If value is not a sort.
+         */
+        public static Sort fromParameter(String value) {
+            return valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    /**
+     * A query. By default every group is matched, sorted by name, 20 to a page.
+     */
+    public static class Query {
+        private final Map<String, List<String>> filters = new LinkedHashMap<>();
+        private int minOpenSpots;
+        private Sort sort = Sort.NAME;
+        private boolean reverse;
+        private int page = 1;
+        private int perPage = 20;
+        private boolean near;
+        private double latitude;
+        private double longitude;
+
+        /**
+         * Only match groups with one of values for the search field. Calling again for the same field replaces its
+         * values.
+         */
+        public Query withFilter(String fieldId, List<String> values) {
+            filters.put(fieldId, values);
+            return this;
+        }
+
+        /**
+         * Only match groups with at least this many open spots. 1 matches every group with room to join.
+         */
+        public Query withMinOpenSpots(int minOpenSpots) {
+            this.minOpenSpots = minOpenSpots;
+            return this;
+        }
+
+        /**
+         * Order the matching groups nearest the point first, instead of by the sort. Groups without a location
+         * follow, by name.
+         */
+        public Query withNear(double latitude, double longitude) {
+            this.near = true;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            return this;
+        }
+
+        public Query withSort(Sort sort, boolean reverse) {
+            this.sort = sort;
+            this.reverse = reverse;
+            return this;
+        }
+
+        /**
+         * @param page The page to return, starting from 1.
+         */
+        public Query withPage(int page) {
+            this.page = page;
+            return this;
+        }
+
+        public Query withPerPage(int perPage) {
+            this.perPage = perPage;
+            return this;
+        }
+    }
+
+    /**
+     * One page of matching groups, with the total and facet counts for the whole result.
+     */
+    public static class Result {
+        private final int total;
+        private final List<GroupSearchDocument> groups;
+        private final Map<String, Map<String, Integer>> facetCounts;
+
+        Result(int total, List<GroupSearchDocument> groups, Map<String, Map<String, Integer>> facetCounts) {
+            this.total = total;
+            this.groups = groups;
+            this.facetCounts = facetCounts;
+        }
+
+        /**
+         * @return The number of groups matching the query on every page.
+         */
+        public int getTotal() {
+            return total;
+        }
+
+        public List<GroupSearchDocument> getGroups() {
+            return groups;
+        }
+
+        /**
+         * @return For each search field, the number of groups each value would match given the other filters.
+         */
+        public Map<String, Map<String, Integer>> getFacetCounts() {
+            return facetCounts;
+        }
+    }
+
+    private final List<GroupSearchDocument> groups;
+    private final int words;
+    private final long[] all;
+
+    private final String[] fieldIds;
+    private final Map<String, Integer> fieldPositions;
+    private final String[][] valueKeys;
+    private final List<Map<String, Integer>> valuePositions;
+    private final long[][][] valueBits;
+
+    private final int[] openSpots;
+    private final int[][] orders;
+    private final GeoGrid grid;
+
+    public GroupsQueryIndex(GroupsCollection collection) {
+        this.groups = new ArrayList<>(collection.getGroups());
+        final int size = groups.size();
+        this.words = (size + 63) >>> 6;
+        this.all = new long[words];
+        for (int position = 0; position < size; position++) {
+            set(all, position);
+        }
+
+        final List<SearchField> fields = collection.getSearchFields() != null
+                ? collection.getSearchFields()
+                : Collections.emptyList();
+        this.fieldIds = new String[fields.size()];
+        this.fieldPositions = new HashMap<>();
+        this.valueKeys = new String[fields.size()][];
+        this.valuePositions = new ArrayList<>(fields.size());
+        this.valueBits = new long[fields.size()][][];
+        for (int f = 0; f < fields.size(); f++) {
+            final SearchField field = fields.get(f);
+            fieldIds[f] = field.getId();
+            fieldPositions.put(field.getId(), f);
+
+            final List<StringPair> options = field.getValues();
+            final Map<String, Integer> positions = new HashMap<>();
+            valueKeys[f] = new String[options.size()];
+            valueBits[f] = new long[options.size()][words];
+            for (int v = 0; v < options.size(); v++) {
+                valueKeys[f][v] = options.get(v).getKey();
+                positions.put(options.get(v).getKey(), v);
+            }
+            valuePositions.add(positions);
+
+            for (int position = 0; position < size; position++) {
+                final String value = SearchFieldValues.getValue(groups.get(position), field.getId());
+                final Integer v = value != null ? positions.get(value) : null;
+                if (v != null) {
+                    set(valueBits[f][v], position);
+                }
+            }
+        }
+
+        this.openSpots = new int[size];
+        final int[] members = new int[size];
+        for (int position = 0; position < size; position++) {
+            final GroupSearchDocument group = groups.get(position);
+            members[position] = group.getCurrentMembers();
+            openSpots[position] = group.isGroupCapacityUnlimited()
+                    ? Integer.MAX_VALUE
+                    : Math.max(0, group.getGroupCapacity() - group.getCurrentMembers());
+        }
+
+        final Comparator<Integer> byName = (a, b) -> compareNames(groups.get(a), groups.get(b));
+        this.orders = new int[Sort.values().length][];
+        orders[Sort.NAME.ordinal()] = sortPositions(size, byName);
+        orders[Sort.OPEN_SPOTS.ordinal()] = sortPositions(size,
+                ((Comparator<Integer>) (a, b) -> Integer.compare(openSpots[b], openSpots[a])).thenComparing(byName));
+        orders[Sort.MEMBERS.ordinal()] = sortPositions(size,
+                ((Comparator<Integer>) (a, b) -> Integer.compare(members[b], members[a])).thenComparing(byName));
+
+        this.grid = new GeoGrid(groups, GeoGrid.DEFAULT_CELL_DEGREES);
+    }
+
+    /**
+     * @return The number of groups in the index.
+     */
+    public int size() {
+        return groups.size();
+    }
+
+    /**
+     * @return true if fieldId is the id of a search field which can be filtered on.
+     */
+    public boolean isSearchField(String fieldId) {
+        return fieldPositions.containsKey(fieldId);
+    }
+
+    /**
+     * @throws IllegalArgumentException If the query filters on a field which is not a search field.
+     */
+    public Result search(Query query) {
+        // The groups matching each filtered field, or null for unfiltered fields.
+        final long[][] fieldMasks = new long[fieldIds.length][];
+        for (Map.Entry<String, List<String>> filter : query.filters.entrySet()) {
+            final Integer f = fieldPositions.get(filter.getKey());
+            if (f == null) {
+                throw new IllegalArgumentException("Unknown search field: " + filter.getKey());
+            }
+            final long[] mask = new long[words];
+            for (String key : filter.getValue()) {
+                final Integer v = valuePositions.get(f).get(key);
+                if (v != null) {
+                    or(mask, valueBits[f][v]);
+                }
+            }
+            fieldMasks[f] = mask;
+        }
+
+        final long[] capacityMask = query.minOpenSpots > 0 ? buildCapacityMask(query.minOpenSpots) : null;
+
+        final long[] matches = all.clone();
+        for (long[] mask : fieldMasks) {
+            if (mask != null) {
+                and(matches, mask);
+            }
+        }
+        if (capacityMask != null) {
+            and(matches, capacityMask);
+        }
+
+        return new Result(cardinality(matches), page(matches, query),
+                countFacets(fieldMasks, capacityMask));
+    }
+
+    private long[] buildCapacityMask(int minOpenSpots) {
+        final long[] mask = new long[words];
+        for (int position = 0; position < openSpots.length; position++) {
+            if (openSpots[position] >= minOpenSpots) {
+                set(mask, position);
+            }
+        }
+        return mask;
+    }
+
+    private List<GroupSearchDocument> page(long[] matches, Query query) {
+        final int perPage = Math.max(0, query.perPage);
+        final long offset = (long) Math.max(0, query.page - 1) * perPage;
+        if (query.near) {
+            return pageNear(matches, query, (int) Math.min(Integer.MAX_VALUE, offset), perPage);
+        }
+
+        final int[] order = orders[query.sort.ordinal()];
+        final List<GroupSearchDocument> page = new ArrayList<>(perPage);
+
+        long skipped = 0;
+        for (int i = 0; i < order.length && page.size() < perPage; i++) {
+            final int position = order[query.reverse ? order.length - 1 - i : i];
+            if (isSet(matches, position)) {
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    page.add(groups.get(position));
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Page through the matches nearest the query's point first, then the matches without a location by name.
+     */
+    private List<GroupSearchDocument> pageNear(long[] matches, Query query, int offset, int perPage) {
+        final int needed = (int) Math.min(Integer.MAX_VALUE, (long) offset + perPage);
+        final int[] nearest = grid.nearest(query.latitude, query.longitude, needed, p -> isSet(matches, p));
+        final List<GroupSearchDocument> page = new ArrayList<>(perPage);
+        for (int i = offset; i < nearest.length; i++) {
+            page.add(groups.get(nearest[i]));
+        }
+        if (page.size() == perPage) {
+            return page;
+        }
+
+        // Every located match has been passed, so the page continues with the unlocated matches.
+        final int located = nearest.length;
+        long skipped = located;
+        for (int position : orders[Sort.NAME.ordinal()]) {
+            if (page.size() >= perPage) {
+                break;
+            }
+            if (isSet(matches, position) && groups.get(position).getLocation() == null) {
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    page.add(groups.get(position));
+                }
+            }
+        }
+        return page;
+    }
+
+    private Map<String, Map<String, Integer>> countFacets(long[][] fieldMasks, long[] capacityMask) {
+        final Map<String, Map<String, Integer>> counts = new LinkedHashMap<>();
+        final long[] base = new long[words];
+        for (int f = 0; f < fieldIds.length; f++) {
+            System.arraycopy(all, 0, base, 0, words);
+            for (int other = 0; other < fieldMasks.length; other++) {
+                if (other != f && fieldMasks[other] != null) {
+                    and(base, fieldMasks[other]);
+                }
+            }
+            if (capacityMask != null) {
+                and(base, capacityMask);
+            }
+
+            final Map<String, Integer> fieldCounts = new LinkedHashMap<>();
+            for (int v = 0; v < valueKeys[f].length; v++) {
+                fieldCounts.put(valueKeys[f][v], intersectionCount(base, valueBits[f][v]));
+            }
+            counts.put(fieldIds[f], fieldCounts);
+        }
+        return counts;
+    }
+
+    private static int[] sortPositions(int size, Comparator<Integer> comparator) {
+        final Integer[] positions = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            positions[i] = i;
+        }
+        Arrays.sort(positions, comparator);
+
+        final int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = positions[i];
+        }
+        return order;
+    }
+
+    private static int compareNames(GroupSearchDocument a, GroupSearchDocument b) {
+        final String nameA = a.getName() != null ? a.getName() : "";
+        final String nameB = b.getName() != null ? b.getName() : "";
+        final int result = String.CASE_INSENSITIVE_ORDER.compare(nameA, nameB);
+        return result != 0 ? result : Integer.compare(a.getId(), b.getId());
+    }
+
+    private static void set(long[] bits, int position) {
+        bits[position >>> 6] |= 1L << position;
+    }
+
+    private static boolean isSet(long[] bits, int position) {
+        return (bits[position >>> 6] & (1L << position)) != 0;
+    }
+
+    private static void and(long[] target, long[] mask) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] &= mask[i];
+        }
+    }
+
+    private static void or(long[] target, long[] mask) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] |= mask[i];
+        }
+    }
+
+    private static int cardinality(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private static int intersectionCount(long[] a, long[] b) {
+        int count = 0;
+        for (int i = 0; i < a.length; i++) {
+            count += Long.bitCount(a[i] & b[i]);
+        }
+        return count;
+    }
+}
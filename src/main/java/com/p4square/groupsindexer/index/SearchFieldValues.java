@@ -0,0 +1,41 @@
+package com.p4square.groupsindexer.index;
+
+import com.p4square.groupsindexer.model.GroupSearchDocument;
+import com.p4square.groupsindexer.model.Reference;
+
+/**
+ * SearchFieldValues maps a {@link com.p4square.groupsindexer.model.SearchField} id to the matching value of a
+ * {@link GroupSearchDocument}.
+ */
+public final class SearchFieldValues {
+
+    private SearchFieldValues() { }
+
+    /**
+     * @param document The group.
+     * @param fieldId A search field id, such as "area" or "udf_1".
+     * @return The key of the group's value for the field, or null if the group has no value.
+     */
+    public static String getValue(GroupSearchDocument document, String fieldId) {
+        switch (fieldId) {
+            case "area":
+                return getId(document.getArea());
+            case "meetingDay":
+                return getId(document.getMeetingDay());
+            case "udf_1":
+                return getId(document.getCustomFields().get("udf_grp_pulldown_1"));
+            case "udf_2":
+                return getId(document.getCustomFields().get("udf_grp_pulldown_2"));
+            case "udf_3":
+                return getId(document.getCustomFields().get("udf_grp_pulldown_3"));
+            case "childcare":
+                return String.valueOf(document.isChildcareProvided());
+            default:
+                return null;
+        }
+    }
+
+    private static String getId(Reference reference) {
+        return reference == null ? null : reference.getId();
+    }
+}
@@ -0,0 +1,129 @@
+package com.p4square.groupsindexer.index;
+
+import com.p4square.groupsindexer.model.GroupSearchDocument;
+import com.p4square.groupsindexer.model.GroupsCollection;
+import com.p4square.groupsindexer.model.TextIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * TextIndexBuilder builds a {@link TextIndex} over the name, leader, city and description of each group.
+ *
+ * Matches in the name count three times as much as matches in the description, and matches in the leader's
+ * name or the city count twice as much.
+ */
+public class TextIndexBuilder implements Function<GroupsCollection, TextIndex> {
+
+    public static final double K1 = 1.2;
+    public static final double B = 0.75;
+
+    private static final int NAME_WEIGHT = 3;
+    private static final int LEADER_WEIGHT = 2;
+    private static final int CITY_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int MAX_PREFIX_LENGTH = 6;
+    private static final int MAX_TERMS_PER_PREFIX = 10;
+
+    @Override
+    public TextIndex apply(GroupsCollection collection) {
+        final List<GroupSearchDocument> groups = collection.getGroups();
+        final TreeMap<String, TermPostings> postingsByTerm = new TreeMap<>();
+        final int[] lengths = new int[groups.size()];
+        long totalLength = 0;
+
+        for (int position = 0; position < groups.size(); position++) {
+            final GroupSearchDocument group = groups.get(position);
+            final Map<String, Integer> frequencies = new HashMap<>();
+            addField(frequencies, group.getName(), NAME_WEIGHT);
+            addField(frequencies, group.getLeaderName(), LEADER_WEIGHT);
+            addField(frequencies, group.getLocationCity(), CITY_WEIGHT);
+            addField(frequencies, group.getDescription(), DESCRIPTION_WEIGHT);
+
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                postingsByTerm.computeIfAbsent(entry.getKey(), term -> new TermPostings())
+                        .add(position, entry.getValue());
+                lengths[position] += entry.getValue();
+            }
+            totalLength += lengths[position];
+        }
+
+        final List<String> terms = new ArrayList<>(postingsByTerm.size());
+        final List<int[]> postings = new ArrayList<>(postingsByTerm.size());
+        for (Map.Entry<String, TermPostings> entry : postingsByTerm.entrySet()) {
+            terms.add(entry.getKey());
+            postings.add(entry.getValue().toArray());
+        }
+
+        final TextIndex index = new TextIndex();
+        index.setLastUpdated(collection.getLastUpdated());
+        index.setContentVersion(collection.getContentVersion());
+        index.setK1(K1);
+        index.setB(B);
+        index.setAverageLength(groups.isEmpty() ? 0 : (double) totalLength / groups.size());
+        index.setLengths(lengths);
+        index.setTerms(terms);
+        index.setPostings(postings);
+        index.setMaxPrefixLength(MAX_PREFIX_LENGTH);
+        index.setPrefixes(buildPrefixes(terms, postings));
+        return index;
+    }
+
+    private void addField(Map<String, Integer> frequencies, String text, int weight) {
+        for (String term : Tokenizer.tokenize(text)) {
+            frequencies.merge(term, weight, Integer::sum);
+        }
+    }
+
+    /**
+     * Map each term prefix to the terms which start with it, most frequent first.
+     */
+    private Map<String, int[]> buildPrefixes(List<String> terms, List<int[]> postings) {
+        final Map<String, List<Integer>> candidates = new TreeMap<>();
+        for (int i = 0; i < terms.size(); i++) {
+            final String term = terms.get(i);
+            for (int length = MIN_PREFIX_LENGTH; length <= Math.min(term.length(), MAX_PREFIX_LENGTH); length++) {
+                candidates.computeIfAbsent(term.substring(0, length), prefix -> new ArrayList<>()).add(i);
+            }
+        }
+
+        final Map<String, int[]> prefixes = new TreeMap<>();
+        for (Map.Entry<String, List<Integer>> entry : candidates.entrySet()) {
+            final List<Integer> termIds = entry.getValue();
+            // Postings hold two ints per document, so their length orders terms by document frequency.
+            termIds.sort((a, b) -> Integer.compare(postings.get(b).length, postings.get(a).length));
+            prefixes.put(entry.getKey(), termIds.stream()
+                    .limit(MAX_TERMS_PER_PREFIX)
+                    .mapToInt(Integer::intValue)
+                    .toArray());
+        }
+        return prefixes;
+    }
+
+    /**
+     * A growable list of (position, frequency) pairs.
+     */
+    private static class TermPostings {
+        private int[] values = new int[8];
+        private int size;
+
+        void add(int position, int frequency) {
+            if (size + 2 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = position;
+            values[size++] = frequency;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
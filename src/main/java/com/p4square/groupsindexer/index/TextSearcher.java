@@ -0,0 +1,154 @@
+package com.p4square.groupsindexer.index;
+
+import com.p4square.groupsindexer.model.TextIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * TextSearcher answers ranked queries against a published {@link TextIndex}.
+ *
+ * Query terms are scored with BM25 and summed. The last term of a query is treated as a prefix so results
+ * update while the user is still typing.
+ */
+public class TextSearcher {
+
+    /**
+     * A matching group and its score.
+     */
+    public static class Hit {
+        private final int position;
+        private final double score;
+
+        Hit(int position, double score) {
+            this.position = position;
+            this.score = score;
+        }
+
+        /**
+         * @return The position of the group in the {@link com.p4square.groupsindexer.model.GroupsCollection}.
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    private final TextIndex index;
+    private final List<String> terms;
+    private final List<int[]> postings;
+    private final int[] lengths;
+
+    public TextSearcher(TextIndex index) {
+        this.index = index;
+        this.terms = index.getTerms();
+        this.postings = index.getPostings();
+        this.lengths = index.getLengths();
+    }
+
+    /**
+     * @param query The user's query.
+     * @param limit The maximum number of hits to return.
+     * @return The best matching groups, highest score first.
+     */
+    public List<Hit> search(String query, int limit) {
+        final List<String> queryTerms = Tokenizer.tokenize(query);
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        final double[] scores = new double[lengths.length];
+        for (int i = 0; i < queryTerms.size(); i++) {
+            final String term = queryTerms.get(i);
+            if (i == queryTerms.size() - 1) {
+                for (int termId : findPrefix(term)) {
+                    score(termId, scores);
+                }
+            } else {
+                final int termId = Collections.binarySearch(terms, term);
+                if (termId >= 0) {
+                    score(termId, scores);
+                }
+            }
+        }
+
+        final PriorityQueue<Hit> best = new PriorityQueue<>(limit, (a, b) -> Double.compare(a.score, b.score));
+        for (int position = 0; position < scores.length; position++) {
+            if (scores[position] > 0) {
+                if (best.size() < limit) {
+                    best.add(new Hit(position, scores[position]));
+                } else if (scores[position] > best.peek().score) {
+                    best.poll();
+                    best.add(new Hit(position, scores[position]));
+                }
+            }
+        }
+
+        final List<Hit> hits = new ArrayList<>(best);
+        hits.sort((a, b) -> Double.compare(b.score, a.score));
+        return hits;
+    }
+
+    /**
+     * @param prefix The partial term typed so far.
+     * @return Up to the published number of completions, most common first.
+     */
+    public List<String> suggest(String prefix) {
+        final List<String> tokens = Tokenizer.tokenize(prefix);
+        if (tokens.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final String token = tokens.get(tokens.size() - 1);
+        final String key = token.length() > index.getMaxPrefixLength()
+                ? token.substring(0, index.getMaxPrefixLength())
+                : token;
+
+        final int[] termIds = index.getPrefixes().get(key);
+        final List<String> suggestions = new ArrayList<>();
+        if (termIds != null) {
+            for (int termId : termIds) {
+                if (terms.get(termId).startsWith(token)) {
+                    suggestions.add(terms.get(termId));
+                }
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Find every term starting with prefix. Terms are sorted, so they form a contiguous range.
+     */
+    private List<Integer> findPrefix(String prefix) {
+        int start = Collections.binarySearch(terms, prefix);
+        if (start < 0) {
+            start = -start - 1;
+        }
+
+        final List<Integer> termIds = new ArrayList<>();
+        for (int i = start; i < terms.size() && terms.get(i).startsWith(prefix); i++) {
+            termIds.add(i);
+        }
+        return termIds;
+    }
+
+    private void score(int termId, double[] scores) {
+        final int[] termPostings = postings.get(termId);
+        final int documentFrequency = termPostings.length / 2;
+        final double idf = Math.log(1 + (lengths.length - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        final double k1 = index.getK1();
+        final double b = index.getB();
+        final double averageLength = index.getAverageLength();
+
+        for (int i = 0; i < termPostings.length; i += 2) {
+            final int position = termPostings[i];
+            final int frequency = termPostings[i + 1];
+            final double norm = k1 * (1 - b + b * lengths[position] / averageLength);
+            scores[position] += idf * frequency * (k1 + 1) / (frequency + norm);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.p4square.groupsindexer.index;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Tokenizer splits free text into normalized search terms.
+ *
+ * Markup is removed, text is lower-cased and stripped of accents, and common English stop words and single
+ * characters are dropped. The same tokenizer must be used to build the index and to parse queries.
+ */
+public final class Tokenizer {
+
+    private static final Pattern TAGS = Pattern.compile("<[^>]*>");
+    private static final Pattern ENTITIES = Pattern.compile("&[a-zA-Z#0-9]+;");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "from", "if", "in", "into", "is", "it",
+            "of", "on", "or", "our", "so", "that", "the", "their", "this", "to", "we", "will", "with", "you", "your"));
+
+    private Tokenizer() { }
+
+    /**
+     * @param text The text to tokenize. May be null.
+     * @return The terms in the order they appear, including duplicates.
+     */
+    public static List<String> tokenize(String text) {
+        final List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+
+        String normalized = TAGS.matcher(text).replaceAll(" ");
+        normalized = ENTITIES.matcher(normalized).replaceAll(" ");
+        normalized = MARKS.matcher(Normalizer.normalize(normalized, Normalizer.Form.NFD)).replaceAll("");
+        normalized = normalized.toLowerCase(Locale.ROOT);
+
+        for (String token : SEPARATORS.split(normalized)) {
+            if (token.length() > 1 && !STOP_WORDS.contains(token)) {
+                terms.add(token);
+            }
+        }
+        return terms;
+    }
+}
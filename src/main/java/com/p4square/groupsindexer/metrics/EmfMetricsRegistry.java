@@ -0,0 +1,120 @@
+package com.p4square.groupsindexer.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * EmfMetricsRegistry logs the metrics of each sync as a CloudWatch Embedded Metric Format document.
+ *
+ * CloudWatch extracts the metrics from the log line, so no API calls are made. Timers are reported as
+ * distributions with their bucket values and counts. The line is written to the {@link #LOGGER_NAME} logger,
+ * which must be configured to write the bare message.
+ */
+public class EmfMetricsRegistry extends InMemoryMetricsRegistry {
+
+    public static final String LOGGER_NAME = "com.p4square.groupsindexer.metrics.EMF";
+
+    private static final Logger LOG = LogManager.getLogger(EmfMetricsRegistry.class);
+    private static final Logger EMF = LogManager.getLogger(LOGGER_NAME);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * CloudWatch accepts at most 100 metrics per document.
+     */
+    private static final int MAX_METRICS = 100;
+
+    private final String namespace;
+    private final Map<String, String> dimensions;
+
+    /**
+     * @param namespace The CloudWatch namespace.
+     * @param dimensions Dimensions attached to every metric. Entries with null values are left out.
+     */
+    public EmfMetricsRegistry(String namespace, Map<String, String> dimensions) {
+        this.namespace = namespace;
+        this.dimensions = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : dimensions.entrySet()) {
+            if (entry.getValue() != null) {
+                this.dimensions.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Log the metrics recorded since the last flush and reset. Metrics recorded while flushing are logged by the
+     * next flush.
+     */
+    @Override
+    public void flush() {
+        final InMemoryMetricsRegistry recorded = drain();
+        try {
+            final String document = format(recorded, System.currentTimeMillis());
+            if (document != null) {
+                EMF.info(document);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to format metrics: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return The recorded metrics as an EMF document, or null if nothing was recorded.
+     */
+    String format(InMemoryMetricsRegistry recorded, long timestamp) {
+        final ObjectNode root = MAPPER.createObjectNode();
+        final ObjectNode aws = root.putObject("_aws");
+        aws.put("Timestamp", timestamp);
+        final ObjectNode directive = aws.putArray("CloudWatchMetrics").addObject();
+        directive.put("Namespace", namespace);
+        final ArrayNode dimensionSet = directive.putArray("Dimensions").addArray();
+        for (Map.Entry<String, String> entry : dimensions.entrySet()) {
+            dimensionSet.add(entry.getKey());
+            root.put(entry.getKey(), entry.getValue());
+        }
+        final ArrayNode metrics = directive.putArray("Metrics");
+
+        for (String name : recorded.getTimerNames()) {
+            if (metrics.size() == MAX_METRICS) {
+                break;
+            }
+            final Histogram timer = recorded.getTimer(name);
+            metrics.addObject().put("Name", name).put("Unit", "Milliseconds");
+            final ObjectNode value = root.putObject(name);
+            final ArrayNode values = value.putArray("Values");
+            for (double v : timer.getBucketValues()) {
+                values.add(v);
+            }
+            final ArrayNode counts = value.putArray("Counts");
+            for (long c : timer.getBucketCounts()) {
+                counts.add(c);
+            }
+            value.put("Max", timer.getMax());
+            value.put("Min", timer.getMin());
+            value.put("Count", timer.getCount());
+            value.put("Sum", timer.getSum());
+        }
+
+        for (String name : recorded.getCounterNames()) {
+            if (metrics.size() == MAX_METRICS) {
+                break;
+            }
+            final String unit = recorded.getUnit(name) == Unit.BYTES ? "Bytes" : "Count";
+            metrics.addObject().put("Name", name).put("Unit", unit);
+            root.put(name, recorded.getCount(name));
+        }
+
+        if (metrics.size() == 0) {
+            return null;
+        }
+        if (metrics.size() == MAX_METRICS) {
+            LOG.warn("Too many metrics for one EMF document. Some were dropped.");
+        }
+        return root.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package com.p4square.groupsindexer.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Histogram summarizes a distribution of millisecond durations in fixed buckets.
+ *
+ * Bucket bounds follow a 1-2-5 series from 1 microsecond to 500 seconds, so a few dozen counters cover everything
+ * from hashing a group to uploading the whole data set. Each bucket is represented by its upper bound.
+ */
+public class Histogram {
+
+    private static final double[] BOUNDS = buildBounds();
+
+    private final long[] counts = new long[BOUNDS.length + 1];
+    private long count;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param valueMs A duration in milliseconds.
+     */
+    public synchronized void record(double valueMs) {
+        int bucket = Arrays.binarySearch(BOUNDS, valueMs);
+        if (bucket < 0) {
+            bucket = -bucket - 1;
+        }
+        counts[bucket]++;
+        count++;
+        sum += valueMs;
+        min = Math.min(min, valueMs);
+        max = Math.max(max, valueMs);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getSum() {
+        return sum;
+    }
+
+    /**
+     * @return The smallest value recorded, or 0 if nothing was recorded.
+     */
+    public synchronized double getMin() {
+        return count > 0 ? min : 0;
+    }
+
+    /**
+     * @return The largest value recorded, or 0 if nothing was recorded.
+     */
+    public synchronized double getMax() {
+        return count > 0 ? max : 0;
+    }
+
+    /**
+     * @param percentile A number between 0 and 100.
+     * @return The upper bound of the bucket containing the percentile, capped at the largest value recorded.
+     */
+    public synchronized double getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(getUpperBound(bucket), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return The upper bound of every non-empty bucket, ascending.
+     */
+    public synchronized double[] getBucketValues() {
+        final double[] values = new double[countNonEmpty()];
+        int i = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            if (counts[bucket] > 0) {
+                values[i++] = Math.min(getUpperBound(bucket), max);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return The number of values in every non-empty bucket, in the same order as {@link #getBucketValues()}.
+     */
+    public synchronized long[] getBucketCounts() {
+        final long[] result = new long[countNonEmpty()];
+        int i = 0;
+        for (long c : counts) {
+            if (c > 0) {
+                result[i++] = c;
+            }
+        }
+        return result;
+    }
+
+    private int countNonEmpty() {
+        int n = 0;
+        for (long c : counts) {
+            if (c > 0) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private double getUpperBound(int bucket) {
+        return bucket < BOUNDS.length ? BOUNDS[bucket] : max;
+    }
+
+    private static double[] buildBounds() {
+        final double[] steps = {1, 2, 5};
+        final double[] bounds = new double[27];
+        double decade = 0.001;
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = decade * steps[i % 3];
+            if (i % 3 == 2) {
+                decade *= 10;
+            }
+        }
+        return bounds;
+    }
+}
@@ -0,0 +1,153 @@
+package com.p4square.groupsindexer.metrics;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * InMemoryMetricsRegistry keeps every measurement in memory until it is reset.
+ *
+ * Useful on its own for tests and benchmarks, which read the metrics after a sync, and as the base of registries
+ * which report elsewhere. Measurements recorded by other threads while the registry is drained go to the next
+ * drain, never lost.
+ */
+public class InMemoryMetricsRegistry implements MetricsRegistry {
+
+    /**
+     * The unit of a counter.
+     */
+    public enum Unit {
+        COUNT,
+        BYTES
+    }
+
+    /**
+     * Recording holds the read lock, so many threads can record at once. Draining holds the write lock while it
+     * swaps in empty maps, so no measurement lands in maps which have already been drained.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile ConcurrentMap<String, Histogram> timers = new ConcurrentHashMap<>();
+    private volatile ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private volatile ConcurrentMap<String, Unit> units = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordTime(String name, long nanos) {
+        lock.readLock().lock();
+        try {
+            timers.computeIfAbsent(name, n -> new Histogram()).record(nanos / 1e6);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void count(String name, long count) {
+        add(name, Unit.COUNT, count);
+    }
+
+    @Override
+    public void countBytes(String name, long bytes) {
+        add(name, Unit.BYTES, bytes);
+    }
+
+    @Override
+    public void flush() {
+        // Metrics stay available until reset.
+    }
+
+    /**
+     * @return The names of every timer, sorted.
+     */
+    public Set<String> getTimerNames() {
+        return new TreeSet<>(timers.keySet());
+    }
+
+    /**
+     * @return The names of every counter, sorted.
+     */
+    public Set<String> getCounterNames() {
+        return new TreeSet<>(counters.keySet());
+    }
+
+    /**
+     * @return The named timer's histogram, or null if nothing was recorded.
+     */
+    public Histogram getTimer(String name) {
+        return timers.get(name);
+    }
+
+    /**
+     * @return The named counter's total, or 0 if nothing was counted.
+     */
+    public long getCount(String name) {
+        final LongAdder counter = counters.get(name);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    /**
+     * @return The named counter's unit, or null if nothing was counted.
+     */
+    public Unit getUnit(String name) {
+        return units.get(name);
+    }
+
+    /**
+     * Forget every measurement.
+     */
+    public void reset() {
+        drain();
+    }
+
+    /**
+     * Move every measurement into a new registry and leave this one empty.
+     *
+     * @return A registry holding the measurements recorded since the last drain or reset.
+     */
+    public InMemoryMetricsRegistry drain() {
+        final InMemoryMetricsRegistry drained = new InMemoryMetricsRegistry();
+        lock.writeLock().lock();
+        try {
+            drained.timers = timers;
+            drained.counters = counters;
+            drained.units = units;
+            timers = new ConcurrentHashMap<>();
+            counters = new ConcurrentHashMap<>();
+            units = new ConcurrentHashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return drained;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (String name : getTimerNames()) {
+            final Histogram timer = timers.get(name);
+            sb.append(String.format("%s: count=%d, p50=%.3fms, p99=%.3fms, max=%.3fms, sum=%.1fms%n", name,
+                    timer.getCount(), timer.getPercentile(50), timer.getPercentile(99), timer.getMax(),
+                    timer.getSum()));
+        }
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            sb.append(entry.getKey()).append(": ").append(entry.getValue().sum());
+            sb.append(units.get(entry.getKey()) == Unit.BYTES ? " bytes" : "").append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    private void add(String name, Unit unit, long amount) {
+        lock.readLock().lock();
+        try {
+            units.putIfAbsent(name, unit);
+            counters.computeIfAbsent(name, n -> new LongAdder()).add(amount);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.p4square.groupsindexer.metrics;
+
+/**
+ * MetricsRegistry receives the measurements taken during a sync.
+ *
+ * Implementations must be safe to call from many threads at once.
+ */
+public interface MetricsRegistry {
+
+    /**
+     * Record one duration in the named latency histogram.
+     *
+     * @param name The metric name.
+     * @param nanos The duration in nanoseconds, as measured with {@link System#nanoTime()}.
+     */
+    void recordTime(String name, long nanos);
+
+    /**
+     * Add to the named counter.
+     *
+     * @param name The metric name.
+     * @param count The amount to add.
+     */
+    void count(String name, long count);
+
+    /**
+     * Add to the named byte counter.
+     *
+     * @param name The metric name.
+     * @param bytes The number of bytes to add.
+     */
+    void countBytes(String name, long bytes);
+
+    /**
+     * Called at the end of each sync. Implementations which report metrics elsewhere do so now.
+     */
+    void flush();
+
+    /**
+     * @return The nanoseconds since start, which was taken from {@link System#nanoTime()}.
+     */
+    static long since(long start) {
+        return System.nanoTime() - start;
+    }
+}
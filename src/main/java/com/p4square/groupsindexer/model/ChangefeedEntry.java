@@ -0,0 +1,86 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Describes one published {@link GroupsDelta}.
+ */
+public class ChangefeedEntry {
+
+    @JsonProperty("from-version")
+    private long fromVersion;
+
+    @JsonProperty("to-version")
+    private long toVersion;
+
+    @JsonProperty("url")
+    private String url;
+
+    @JsonProperty("added")
+    private int added;
+
+    @JsonProperty("removed")
+    private int removed;
+
+    @JsonProperty("changed")
+    private int changed;
+
+    public ChangefeedEntry() { }
+
+    public ChangefeedEntry(GroupsDelta delta, String url) {
+        this.fromVersion = delta.getFromVersion();
+        this.toVersion = delta.getToVersion();
+        this.url = url;
+        this.added = delta.getAdded().size();
+        this.removed = delta.getRemoved().size();
+        this.changed = delta.getChanged().size();
+    }
+
+    public long getFromVersion() {
+        return fromVersion;
+    }
+
+    public void setFromVersion(long fromVersion) {
+        this.fromVersion = fromVersion;
+    }
+
+    public long getToVersion() {
+        return toVersion;
+    }
+
+    public void setToVersion(long toVersion) {
+        this.toVersion = toVersion;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public int getAdded() {
+        return added;
+    }
+
+    public void setAdded(int added) {
+        this.added = added;
+    }
+
+    public int getRemoved() {
+        return removed;
+    }
+
+    public void setRemoved(int removed) {
+        this.removed = removed;
+    }
+
+    public int getChanged() {
+        return changed;
+    }
+
+    public void setChanged(int changed) {
+        this.changed = changed;
+    }
+}
@@ -0,0 +1,87 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonView;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Points at the current groups snapshot and the deltas leading up to it.
+ *
+ * A client holding version v applies the deltas with from-version v and later, in order. If no delta starts at
+ * v, the client downloads the snapshot instead.
+ */
+public class ChangefeedManifest {
+
+    @JsonProperty("version")
+    private long version;
+
+    @JsonProperty("last-updated")
+    @JsonView(Views.Timestamps.class)
+    private Instant lastUpdated;
+
+    @JsonProperty("snapshot-url")
+    private String snapshotUrl;
+
+    @JsonProperty("formats")
+    private List<SnapshotFormat> formats;
+
+    @JsonProperty("deltas")
+    private List<ChangefeedEntry> deltas;
+
+    public ChangefeedManifest() {
+        formats = new ArrayList<>();
+        deltas = new ArrayList<>();
+    }
+
+    /**
+     * @return The version of the current snapshot.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Instant getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated(Instant lastUpdated) {
+        this.lastUpdated = lastUpdated;
+    }
+
+    public String getSnapshotUrl() {
+        return snapshotUrl;
+    }
+
+    public void setSnapshotUrl(String snapshotUrl) {
+        this.snapshotUrl = snapshotUrl;
+    }
+
+    /**
+     * @return Every encoding of the current snapshot, cheapest to decode first.
+     */
+    public List<SnapshotFormat> getFormats() {
+        return formats;
+    }
+
+    public void setFormats(List<SnapshotFormat> formats) {
+        this.formats = new ArrayList<>(formats);
+    }
+
+    /**
+     * @return Recent deltas, oldest first.
+     */
+    public List<ChangefeedEntry> getDeltas() {
+        return deltas;
+    }
+
+    public void setDeltas(List<ChangefeedEntry> deltas) {
+        this.deltas = new ArrayList<>(deltas);
+    }
+}
@@ -0,0 +1,21 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * CompactGroupsCollection serializes a {@link GroupsCollection} with every distinct {@link Reference} written
+ * once in a "references" table. Documents refer to references by their index in the table.
+ */
+@JsonSerialize(using = CompactGroupsCollectionSerializer.class)
+public class CompactGroupsCollection {
+
+    private final GroupsCollection collection;
+
+    public CompactGroupsCollection(GroupsCollection collection) {
+        this.collection = collection;
+    }
+
+    public GroupsCollection getCollection() {
+        return collection;
+    }
+}
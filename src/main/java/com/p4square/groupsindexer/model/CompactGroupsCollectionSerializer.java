@@ -0,0 +1,192 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a {@link CompactGroupsCollection}.
+ *
+ * Documents are written with the properties of {@link GroupSearchDocument}'s own serializer, so they always have
+ * the same properties as the full schema, except that reference properties hold an index into the top level
+ * "references" array, or null.
+ */
+public class CompactGroupsCollectionSerializer extends StdSerializer<CompactGroupsCollection> {
+
+    private static final long serialVersionUID = 1L;
+
+    public CompactGroupsCollectionSerializer() {
+        super(CompactGroupsCollection.class);
+    }
+
+    @Override
+    public void serialize(CompactGroupsCollection value, JsonGenerator gen, SerializerProvider provider)
+            throws IOException {
+
+        final GroupsCollection collection = value.getCollection();
+        final List<BeanPropertyWriter> properties = getDocumentProperties(provider);
+        final Map<Reference, Integer> references = buildReferenceTable(gen, collection, properties);
+
+        gen.writeStartObject();
+        gen.writeNumberField("schema-version", GroupsCollection.SCHEMA_VERSION);
+        gen.writeNumberField("version", collection.getVersion());
+        final Class<?> view = provider.getActiveView();
+        if (view == null || Views.ContentVersion.class.isAssignableFrom(view)) {
+            gen.writeStringField("content-version", collection.getContentVersion());
+        }
+        if (view == null || Views.Timestamps.class.isAssignableFrom(view)) {
+            gen.writeFieldName("last-updated");
+            provider.defaultSerializeValue(collection.getLastUpdated(), gen);
+            gen.writeFieldName("last-full-sync");
+            provider.defaultSerializeValue(collection.getLastFullSync(), gen);
+        }
+        gen.writeFieldName("search-fields");
+        provider.defaultSerializeValue(collection.getSearchFields(), gen);
+
+        gen.writeArrayFieldStart("references");
+        for (Reference reference : references.keySet()) {
+            gen.writeStartObject();
+            gen.writeStringField("id", reference.getId());
+            gen.writeStringField("label", reference.getLabel());
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+
+        gen.writeArrayFieldStart("groups");
+        for (GroupSearchDocument document : collection.getGroups()) {
+            writeDocument(gen, provider, document, properties, references);
+        }
+        gen.writeEndArray();
+
+        gen.writeEndObject();
+    }
+
+    /**
+     * @return The properties GroupSearchDocument is serialized with in the active view, in order.
+     */
+    private List<BeanPropertyWriter> getDocumentProperties(SerializerProvider provider) throws IOException {
+        final Class<?> view = provider.getActiveView();
+        final List<BeanPropertyWriter> properties = new ArrayList<>();
+        final Iterator<PropertyWriter> it = provider.findValueSerializer(GroupSearchDocument.class).properties();
+        while (it.hasNext()) {
+            final BeanPropertyWriter property = (BeanPropertyWriter) it.next();
+            if (isInView(property, view)) {
+                properties.add(property);
+            }
+        }
+        return properties;
+    }
+
+    private Map<Reference, Integer> buildReferenceTable(JsonGenerator gen, GroupsCollection collection,
+                                                        List<BeanPropertyWriter> properties) throws IOException {
+        final Map<Reference, Integer> references = new LinkedHashMap<>();
+        for (GroupSearchDocument document : collection.getGroups()) {
+            for (BeanPropertyWriter property : properties) {
+                if (isReference(property)) {
+                    addReference(references, (Reference) getValue(gen, property, document));
+                } else if (isReferenceMap(property)) {
+                    final Map<?, ?> map = (Map<?, ?>) getValue(gen, property, document);
+                    if (map != null) {
+                        for (Object reference : map.values()) {
+                            addReference(references, (Reference) reference);
+                        }
+                    }
+                }
+            }
+        }
+        return references;
+    }
+
+    private void addReference(Map<Reference, Integer> references, Reference reference) {
+        if (reference != null) {
+            references.putIfAbsent(reference, references.size());
+        }
+    }
+
+    private void writeDocument(JsonGenerator gen, SerializerProvider provider, GroupSearchDocument document,
+                               List<BeanPropertyWriter> properties, Map<Reference, Integer> references)
+            throws IOException {
+
+        gen.writeStartObject();
+        for (BeanPropertyWriter property : properties) {
+            if (isReference(property)) {
+                writeReference(gen, property.getName(), (Reference) getValue(gen, property, document), references);
+
+            } else if (isReferenceMap(property)) {
+                final Map<?, ?> map = (Map<?, ?>) getValue(gen, property, document);
+                gen.writeFieldName(property.getName());
+                if (map == null) {
+                    gen.writeNull();
+                    continue;
+                }
+                gen.writeStartObject();
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeReference(gen, String.valueOf(entry.getKey()), (Reference) entry.getValue(), references);
+                }
+                gen.writeEndObject();
+
+            } else {
+                try {
+                    property.serializeAsField(document, gen, provider);
+                } catch (IOException | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw JsonMappingException.from(gen, "Failed to write " + property.getName(), e);
+                }
+            }
+        }
+        gen.writeEndObject();
+    }
+
+    private void writeReference(JsonGenerator gen, String name, Reference reference,
+                                Map<Reference, Integer> references) throws IOException {
+        gen.writeFieldName(name);
+        if (reference == null) {
+            gen.writeNull();
+        } else {
+            gen.writeNumber(references.get(reference));
+        }
+    }
+
+    private static Object getValue(JsonGenerator gen, BeanPropertyWriter property, Object bean) throws IOException {
+        try {
+            return property.get(bean);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw JsonMappingException.from(gen, "Failed to read " + property.getName(), e);
+        }
+    }
+
+    private static boolean isReference(BeanPropertyWriter property) {
+        return property.getType().hasRawClass(Reference.class);
+    }
+
+    private static boolean isReferenceMap(BeanPropertyWriter property) {
+        final JavaType type = property.getType();
+        return type.isMapLikeType() && type.getContentType().hasRawClass(Reference.class);
+    }
+
+    private static boolean isInView(BeanPropertyWriter property, Class<?> view) {
+        if (view == null || property.getViews() == null) {
+            return true;
+        }
+        for (Class<?> propertyView : property.getViews()) {
+            if (propertyView.isAssignableFrom(view)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
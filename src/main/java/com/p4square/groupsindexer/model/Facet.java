@@ -0,0 +1,40 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * The postings for each value of one {@link SearchField}.
+ */
+public class Facet {
+
+    @JsonProperty("id")
+    private String id;
+
+    @JsonProperty("values")
+    private List<FacetValue> values;
+
+    public Facet() { }
+
+    public Facet(String id, List<FacetValue> values) {
+        this.id = id;
+        this.values = values;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public List<FacetValue> getValues() {
+        return values;
+    }
+
+    public void setValues(List<FacetValue> values) {
+        this.values = values;
+    }
+}
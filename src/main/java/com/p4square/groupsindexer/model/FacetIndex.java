@@ -0,0 +1,65 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonView;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * FacetIndex lists, for every search field value, the positions of the groups in the
+ * {@link GroupsCollection} which have that value.
+ *
+ * The positions are only meaningful in the collection whose content version matches {@code content-version}.
+ * Clients should reload whichever is older when they differ.
+ */
+public class FacetIndex {
+    @JsonProperty("last-updated")
+    @JsonView(Views.Timestamps.class)
+    private Instant lastUpdated;
+
+    @JsonProperty("content-version")
+    private String contentVersion;
+
+    @JsonProperty("group-count")
+    private int groupCount;
+
+    @JsonProperty("facets")
+    private List<Facet> facets;
+
+    public Instant getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated(Instant lastUpdated) {
+        this.lastUpdated = lastUpdated;
+    }
+
+    /**
+     * @return The {@link GroupsCollection#getContentVersion() content version} of the groups data the posting lists
+     *         refer to.
+     */
+    public String getContentVersion() {
+        return contentVersion;
+    }
+
+    public void setContentVersion(String contentVersion) {
+        this.contentVersion = contentVersion;
+    }
+
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    public void setGroupCount(int groupCount) {
+        this.groupCount = groupCount;
+    }
+
+    public List<Facet> getFacets() {
+        return facets;
+    }
+
+    public void setFacets(List<Facet> facets) {
+        this.facets = facets;
+    }
+}
@@ -0,0 +1,51 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One search field value, the number of groups with that value and their positions in the
+ * {@link GroupsCollection}, in ascending order.
+ */
+public class FacetValue {
+
+    @JsonProperty("key")
+    private String key;
+
+    @JsonProperty("count")
+    private int count;
+
+    @JsonProperty("groups")
+    private int[] groups;
+
+    public FacetValue() { }
+
+    public FacetValue(String key, int[] groups) {
+        this.key = key;
+        this.count = groups.length;
+        this.groups = groups;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public int[] getGroups() {
+        return groups;
+    }
+
+    public void setGroups(int[] groups) {
+        this.groups = groups;
+    }
+}
@@ -0,0 +1,91 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonView;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * GeoIndex buckets the located groups of a {@link GroupsCollection} into a grid of equal latitude and longitude
+ * steps, so the groups nearest a point can be found by searching outward from its cell.
+ *
+ * A point is in the cell "row:col" where row = floor(lat / cell-degrees) and col = floor(lon / cell-degrees).
+ * Each cell lists the positions of its groups in the collection. Group locations are in the groups data and
+ * listing. Clients must check that {@code content-version} matches the groups data before using the positions.
+ */
+public class GeoIndex {
+    @JsonProperty("last-updated")
+    @JsonView(Views.Timestamps.class)
+    private Instant lastUpdated;
+
+    @JsonProperty("content-version")
+    private String contentVersion;
+
+    @JsonProperty("group-count")
+    private int groupCount;
+
+    @JsonProperty("located-count")
+    private int locatedCount;
+
+    @JsonProperty("cell-degrees")
+    private double cellDegrees;
+
+    @JsonProperty("cells")
+    private Map<String, int[]> cells;
+
+    public Instant getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated(Instant lastUpdated) {
+        this.lastUpdated = lastUpdated;
+    }
+
+    /**
+     * @return The {@link GroupsCollection#getContentVersion() content version} of the groups data the cells were
+     *         built from.
+     */
+    public String getContentVersion() {
+        return contentVersion;
+    }
+
+    public void setContentVersion(String contentVersion) {
+        this.contentVersion = contentVersion;
+    }
+
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    public void setGroupCount(int groupCount) {
+        this.groupCount = groupCount;
+    }
+
+    /**
+     * @return The number of groups with a location.
+     */
+    public int getLocatedCount() {
+        return locatedCount;
+    }
+
+    public void setLocatedCount(int locatedCount) {
+        this.locatedCount = locatedCount;
+    }
+
+    public double getCellDegrees() {
+        return cellDegrees;
+    }
+
+    public void setCellDegrees(double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+    }
+
+    public Map<String, int[]> getCells() {
+        return cells;
+    }
+
+    public void setCells(Map<String, int[]> cells) {
+        this.cells = cells;
+    }
+}
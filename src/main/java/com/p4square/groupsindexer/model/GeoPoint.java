@@ -0,0 +1,63 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * An approximate location. Group locations are the center of their postal code or city, never a street address.
+ */
+public class GeoPoint {
+
+    /**
+     * Locations resolved from a postal code.
+     */
+    public static final String POSTAL_CODE = "postal-code";
+
+    /**
+     * Locations resolved from a city and state.
+     */
+    public static final String CITY = "city";
+
+    @JsonProperty("lat")
+    private double latitude;
+
+    @JsonProperty("lon")
+    private double longitude;
+
+    @JsonProperty("precision")
+    private String precision;
+
+    public GeoPoint() { }
+
+    public GeoPoint(double latitude, double longitude, String precision) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.precision = precision;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public void setLatitude(double latitude) {
+        this.latitude = latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public void setLongitude(double longitude) {
+        this.longitude = longitude;
+    }
+
+    /**
+     * @return What the location was resolved from: {@link #POSTAL_CODE} or {@link #CITY}.
+     */
+    public String getPrecision() {
+        return precision;
+    }
+
+    public void setPrecision(String precision) {
+        this.precision = precision;
+    }
+}
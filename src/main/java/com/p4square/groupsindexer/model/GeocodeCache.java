@@ -0,0 +1,48 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Remembers the location each group address resolved to, so the gazetteer is only loaded for new addresses.
+ *
+ * Addresses which could not be resolved are remembered with a null location. The whole cache is discarded once it
+ * is old enough that the gazetteer may have been updated.
+ *
+ * Entries are keyed by postal code, city and state, so the cache is kept with the sync's private state and never
+ * published.
+ */
+public class GeocodeCache {
+
+    @JsonProperty("created")
+    private Instant created;
+
+    @JsonProperty("entries")
+    private Map<String, GeoPoint> entries;
+
+    public GeocodeCache() {
+        entries = new TreeMap<>();
+    }
+
+    public Instant getCreated() {
+        return created;
+    }
+
+    public void setCreated(Instant created) {
+        this.created = created;
+    }
+
+    /**
+     * @return The location of each address key. Null values are addresses which could not be resolved.
+     */
+    public Map<String, GeoPoint> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(Map<String, GeoPoint> entries) {
+        this.entries = entries;
+    }
+}
@@ -0,0 +1,44 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Map;
+
+/**
+ * The properties of one group which changed between two versions.
+ */
+public class GroupChange {
+
+    @JsonProperty("id")
+    private int id;
+
+    @JsonProperty("fields")
+    private Map<String, JsonNode> fields;
+
+    public GroupChange() { }
+
+    public GroupChange(int id, Map<String, JsonNode> fields) {
+        this.id = id;
+        this.fields = fields;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    /**
+     * @return The new value of each changed property, by property name. Removed properties are null.
+     */
+    public Map<String, JsonNode> getFields() {
+        return fields;
+    }
+
+    public void setFields(Map<String, JsonNode> fields) {
+        this.fields = fields;
+    }
+}
@@ -0,0 +1,172 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+/**
+ * A group in the search listing. The full group is published separately as a {@link GroupSearchDocument}.
+ */
+public class GroupListing {
+
+    @JsonProperty("id")
+    private int id;
+
+    @JsonProperty("name")
+    private String name;
+
+    @JsonProperty("snippet")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String snippet;
+
+    @JsonProperty("image-url")
+    private String imageUrl;
+
+    @JsonProperty("leader-name")
+    private String leaderName;
+
+    @JsonProperty("location-city")
+    private String locationCity;
+
+    @JsonProperty("location")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private GeoPoint location;
+
+    @JsonProperty("member-count")
+    private int currentMembers;
+
+    @JsonProperty("group-capacity")
+    private Integer groupCapacity;
+
+    @JsonProperty("childcare")
+    private boolean childcareProvided;
+
+    @JsonProperty("udf")
+    private Map<String, Reference> customFields;
+
+    private Reference campus;
+    private Reference area;
+    private Reference meetingDay;
+    private Reference meetingTime;
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public void setSnippet(String snippet) {
+        this.snippet = snippet;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public void setImageUrl(String imageUrl) {
+        this.imageUrl = imageUrl;
+    }
+
+    public String getLeaderName() {
+        return leaderName;
+    }
+
+    public void setLeaderName(String leaderName) {
+        this.leaderName = leaderName;
+    }
+
+    public String getLocationCity() {
+        return locationCity;
+    }
+
+    public void setLocationCity(String locationCity) {
+        this.locationCity = locationCity;
+    }
+
+    public GeoPoint getLocation() {
+        return location;
+    }
+
+    public void setLocation(GeoPoint location) {
+        this.location = location;
+    }
+
+    public int getCurrentMembers() {
+        return currentMembers;
+    }
+
+    public void setCurrentMembers(int currentMembers) {
+        this.currentMembers = currentMembers;
+    }
+
+    public Integer getGroupCapacity() {
+        return groupCapacity;
+    }
+
+    public void setGroupCapacity(Integer groupCapacity) {
+        this.groupCapacity = groupCapacity;
+    }
+
+    public boolean isChildcareProvided() {
+        return childcareProvided;
+    }
+
+    public void setChildcareProvided(boolean childcareProvided) {
+        this.childcareProvided = childcareProvided;
+    }
+
+    public Map<String, Reference> getCustomFields() {
+        return customFields;
+    }
+
+    public void setCustomFields(Map<String, Reference> customFields) {
+        this.customFields = customFields;
+    }
+
+    public Reference getCampus() {
+        return campus;
+    }
+
+    public void setCampus(Reference campus) {
+        this.campus = campus;
+    }
+
+    public Reference getArea() {
+        return area;
+    }
+
+    public void setArea(Reference area) {
+        this.area = area;
+    }
+
+    public Reference getMeetingDay() {
+        return meetingDay;
+    }
+
+    public void setMeetingDay(Reference meetingDay) {
+        this.meetingDay = meetingDay;
+    }
+
+    public Reference getMeetingTime() {
+        return meetingTime;
+    }
+
+    public void setMeetingTime(Reference meetingTime) {
+        this.meetingTime = meetingTime;
+    }
+}
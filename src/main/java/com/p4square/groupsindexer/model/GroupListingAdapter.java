@@ -0,0 +1,63 @@
+package com.p4square.groupsindexer.model;
+
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * GroupListingAdapter is a function which converts a {@link GroupSearchDocument} to a {@link GroupListing}.
+ *
+ * The description is replaced by an optional plain text snippet.
+ */
+public class GroupListingAdapter implements Function<GroupSearchDocument, GroupListing> {
+
+    private static final Pattern TAGS = Pattern.compile("<[^>]*>");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final int snippetLength;
+
+    /**
+     * @param snippetLength The longest snippet to include, or 0 for no snippets.
+     */
+    public GroupListingAdapter(int snippetLength) {
+        this.snippetLength = snippetLength;
+    }
+
+    @Override
+    public GroupListing apply(GroupSearchDocument document) {
+        final GroupListing listing = new GroupListing();
+        listing.setId(document.getId());
+        listing.setName(document.getName());
+        listing.setSnippet(snippet(document.getDescription()));
+        listing.setImageUrl(document.getImageUrl());
+        listing.setLeaderName(document.getLeaderName());
+        listing.setLocationCity(document.getLocationCity());
+        listing.setLocation(document.getLocation());
+        listing.setCurrentMembers(document.getCurrentMembers());
+        listing.setGroupCapacity(document.getGroupCapacity());
+        listing.setChildcareProvided(document.isChildcareProvided());
+        listing.setCustomFields(document.getCustomFields());
+        listing.setCampus(document.getCampus());
+        listing.setArea(document.getArea());
+        listing.setMeetingDay(document.getMeetingDay());
+        listing.setMeetingTime(document.getMeetingTime());
+        return listing;
+    }
+
+    private String snippet(String description) {
+        if (snippetLength <= 0 || description == null) {
+            return null;
+        }
+
+        final String text = WHITESPACE.matcher(TAGS.matcher(description).replaceAll(" ")).replaceAll(" ").trim();
+        if (text.length() <= snippetLength) {
+            return text;
+        }
+
+        // Break at the last word boundary that fits.
+        int end = text.lastIndexOf(' ', snippetLength - 1);
+        if (end <= 0) {
+            end = snippetLength - 1;
+        }
+        return text.substring(0, end) + "…";
+    }
+}
@@ -32,6 +32,16 @@ public class GroupSearchDocument {
     @JsonProperty("location-city")
     private String locationCity;
 
+    // Group addresses are usually a host's home, so only the city and the approximate location are published.
+    @JsonIgnore
+    private String locationState;
+
+    @JsonIgnore
+    private String locationPostalCode;
+
+    @JsonProperty("location")
+    private GeoPoint location;
+
     @JsonProperty("member-count")
     private int currentMembers;
 
@@ -112,6 +122,39 @@ public class GroupSearchDocument {
         this.locationCity = locationCity;
     }
 
+    /**
+     * @return The state of the group's address. Only used to locate the group. Never published.
+     */
+    public String getLocationState() {
+        return locationState;
+    }
+
+    public void setLocationState(String locationState) {
+        this.locationState = locationState;
+    }
+
+    /**
+     * @return The postal code of the group's address. Only used to locate the group. Never published.
+     */
+    public String getLocationPostalCode() {
+        return locationPostalCode;
+    }
+
+    public void setLocationPostalCode(String locationPostalCode) {
+        this.locationPostalCode = locationPostalCode;
+    }
+
+    /**
+     * @return The approximate location of the group, or null if it could not be resolved.
+     */
+    public GeoPoint getLocation() {
+        return location;
+    }
+
+    public void setLocation(GeoPoint location) {
+        this.location = location;
+    }
+
     public String getImageUrl() {
         return imageUrl;
     }
@@ -1,5 +1,6 @@
 package com.p4square.groupsindexer.model;
 
+import com.p4square.ccbapi.model.Address;
 import com.p4square.ccbapi.model.CustomPulldownFieldValue;
 import com.p4square.ccbapi.model.GroupProfile;
 
@@ -8,8 +9,21 @@ import java.util.function.Function;
 
 /**
  * GroupSearchDocumentAdapter is a function which converts a CCB {@link GroupProfile} to a {@link GroupSearchDocument}.
+ *
+ * References are taken from a {@link ReferencePool}, so documents adapted by the same adapter share them.
  */
 public class GroupSearchDocumentAdapter implements Function<GroupProfile, GroupSearchDocument> {
+
+    private final ReferencePool referencePool;
+
+    public GroupSearchDocumentAdapter() {
+        this(new ReferencePool());
+    }
+
+    public GroupSearchDocumentAdapter(ReferencePool referencePool) {
+        this.referencePool = referencePool;
+    }
+
     @Override
     public GroupSearchDocument apply(GroupProfile groupProfile) {
         final GroupSearchDocument doc = new GroupSearchDocument();
@@ -23,7 +37,10 @@ public class GroupSearchDocumentAdapter implements Function<GroupProfile, GroupS
                         groupProfile.getMainLeader().getFirstName() + " " +
                         abbreviateName(groupProfile.getMainLeader().getLastName()));
         if (groupProfile.getAddresses().size() > 0) {
-            doc.setLocationCity(groupProfile.getAddresses().get(0).getCity());
+            final Address address = groupProfile.getAddresses().get(0);
+            doc.setLocationCity(address.getCity());
+            doc.setLocationState(address.getState());
+            doc.setLocationPostalCode(address.getZip());
         }
         doc.setCurrentMembers(groupProfile.getCurrentMembers());
         doc.setGroupCapacity(groupProfile.getGroupCapacity());
@@ -39,23 +56,21 @@ public class GroupSearchDocumentAdapter implements Function<GroupProfile, GroupS
         doc.setMeetingTime(adaptReference(groupProfile.getMeetingTime()));
 
         for (final CustomPulldownFieldValue field : groupProfile.getCustomPulldownFields()) {
-            final Reference ref = new Reference();
-            ref.setId(String.valueOf(field.getSelection().getId()));
-            ref.setLabel(field.getSelection().getLabel());
-            doc.getCustomFields().put(field.getName(), ref);
+            doc.getCustomFields().put(field.getName(),
+                    referencePool.get(field.getSelection().getId(), field.getSelection().getLabel()));
         }
 
         return doc;
     }
 
     private Reference adaptReference(com.p4square.ccbapi.model.Reference r) {
-        final Reference ref = new Reference();
-        ref.setId(String.valueOf(r.getId()));
-        ref.setLabel(r.getName());
-        return ref;
+        return referencePool.get(r.getId(), r.getName());
     }
 
-    private String abbreviateName(final String name) {
+    /**
+     * Reduce a name to its initials, e.g. "Van Buren" becomes "V.B.".
+     */
+    public static String abbreviateName(final String name) {
         return Arrays.stream(name.split(" "))
                 .map(s -> s.substring(0, 1) + ".")
                 .reduce("", String::concat);
@@ -1,6 +1,7 @@
 package com.p4square.groupsindexer.model;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonView;
 
 import java.time.Instant;
 import java.util.List;
@@ -9,15 +10,68 @@ import java.util.List;
  * A list of groups and some metadata.
  */
 public class GroupsCollection {
+    /**
+     * The version of the published document layout. Increment when existing properties change meaning.
+     */
+    public static final int SCHEMA_VERSION = 1;
+
+    @JsonProperty("version")
+    private long version;
+
+    @JsonProperty("content-version")
+    @JsonView(Views.ContentVersion.class)
+    private String contentVersion;
+
     @JsonProperty("last-updated")
+    @JsonView(Views.Timestamps.class)
     private Instant lastUpdated;
 
+    @JsonProperty("last-full-sync")
+    @JsonView(Views.Timestamps.class)
+    private Instant lastFullSync;
+
     @JsonProperty("groups")
     private List<GroupSearchDocument> groups;
 
     @JsonProperty("search-fields")
     private List<SearchField> searchFields;
 
+    @JsonProperty("schema-version")
+    public int getSchemaVersion() {
+        return SCHEMA_VERSION;
+    }
+
+    /**
+     * @return The changefeed version of this collection. It increases whenever the content changes.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * The facet, text and geo indexes and the listing refer to groups by their position in this collection. They
+     * are published separately and cached independently, so a client may load an index built for a different
+     * version of the collection. Each carries the content version of the collection it was built from, and
+     * clients must only use its positions when that matches this content version.
+     *
+     * @return The SHA-256 of this collection's content, excluding timestamps.
+     */
+    public String getContentVersion() {
+        return contentVersion;
+    }
+
+    public void setContentVersion(String contentVersion) {
+        this.contentVersion = contentVersion;
+    }
+
+    /**
+     * @return When the sync which last changed the content started. Syncs which change nothing don't rewrite the
+     *         published collection, so see {@link SyncState} for when the last sync ran.
+     */
     public Instant getLastUpdated() {
         return lastUpdated;
     }
@@ -26,6 +80,14 @@ public class GroupsCollection {
         this.lastUpdated = lastUpdated;
     }
 
+    public Instant getLastFullSync() {
+        return lastFullSync;
+    }
+
+    public void setLastFullSync(Instant lastFullSync) {
+        this.lastFullSync = lastFullSync;
+    }
+
     public List<GroupSearchDocument> getGroups() {
         return groups;
     }
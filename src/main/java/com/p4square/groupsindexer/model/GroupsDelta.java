@@ -0,0 +1,111 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The changes between two consecutive versions of the {@link GroupsCollection}.
+ *
+ * Applying a delta to version from-version gives version to-version.
+ */
+public class GroupsDelta {
+
+    @JsonProperty("from-version")
+    private long fromVersion;
+
+    @JsonProperty("to-version")
+    private long toVersion;
+
+    @JsonProperty("last-updated")
+    private Instant lastUpdated;
+
+    @JsonProperty("added")
+    private List<GroupSearchDocument> added;
+
+    @JsonProperty("removed")
+    private List<Integer> removed;
+
+    @JsonProperty("changed")
+    private List<GroupChange> changed;
+
+    @JsonProperty("search-fields")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<SearchField> searchFields;
+
+    public long getFromVersion() {
+        return fromVersion;
+    }
+
+    public void setFromVersion(long fromVersion) {
+        this.fromVersion = fromVersion;
+    }
+
+    public long getToVersion() {
+        return toVersion;
+    }
+
+    public void setToVersion(long toVersion) {
+        this.toVersion = toVersion;
+    }
+
+    public Instant getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated(Instant lastUpdated) {
+        this.lastUpdated = lastUpdated;
+    }
+
+    /**
+     * @return Complete documents for new groups.
+     */
+    public List<GroupSearchDocument> getAdded() {
+        return added;
+    }
+
+    public void setAdded(List<GroupSearchDocument> added) {
+        this.added = added;
+    }
+
+    /**
+     * @return The ids of groups which are no longer listed.
+     */
+    public List<Integer> getRemoved() {
+        return removed;
+    }
+
+    public void setRemoved(List<Integer> removed) {
+        this.removed = removed;
+    }
+
+    public List<GroupChange> getChanged() {
+        return changed;
+    }
+
+    public void setChanged(List<GroupChange> changed) {
+        this.changed = changed;
+    }
+
+    /**
+     * @return The new search fields, or null if they did not change.
+     */
+    public List<SearchField> getSearchFields() {
+        return searchFields;
+    }
+
+    public void setSearchFields(List<SearchField> searchFields) {
+        this.searchFields = searchFields;
+    }
+
+    /**
+     * @return true if the delta has no changes.
+     */
+    @JsonIgnore
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty() && searchFields == null;
+    }
+}
@@ -0,0 +1,73 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonView;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The search listing. Groups are in the same order as the {@link GroupsCollection}, so facet index positions
+ * apply to both.
+ */
+public class GroupsListing {
+    @JsonProperty("last-updated")
+    @JsonView(Views.Timestamps.class)
+    private Instant lastUpdated;
+
+    @JsonProperty("content-version")
+    private String contentVersion;
+
+    @JsonProperty("detail-url-template")
+    private String detailUrlTemplate;
+
+    @JsonProperty("groups")
+    private List<GroupListing> groups;
+
+    @JsonProperty("search-fields")
+    private List<SearchField> searchFields;
+
+    public Instant getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated(Instant lastUpdated) {
+        this.lastUpdated = lastUpdated;
+    }
+
+    /**
+     * @return The {@link GroupsCollection#getContentVersion() content version} of the groups data this listing
+     *         follows the order of.
+     */
+    public String getContentVersion() {
+        return contentVersion;
+    }
+
+    public void setContentVersion(String contentVersion) {
+        this.contentVersion = contentVersion;
+    }
+
+    public String getDetailUrlTemplate() {
+        return detailUrlTemplate;
+    }
+
+    public void setDetailUrlTemplate(String detailUrlTemplate) {
+        this.detailUrlTemplate = detailUrlTemplate;
+    }
+
+    public List<GroupListing> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(List<GroupListing> groups) {
+        this.groups = groups;
+    }
+
+    public List<SearchField> getSearchFields() {
+        return searchFields;
+    }
+
+    public void setSearchFields(List<SearchField> searchFields) {
+        this.searchFields = searchFields;
+    }
+}
@@ -0,0 +1,98 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of groups matching a search, with facet counts for the whole result.
+ */
+public class GroupsQueryResponse {
+    @JsonProperty("version")
+    private long version;
+
+    @JsonProperty("last-updated")
+    private Instant lastUpdated;
+
+    @JsonProperty("total")
+    private int total;
+
+    @JsonProperty("page")
+    private int page;
+
+    @JsonProperty("per-page")
+    private int perPage;
+
+    @JsonProperty("groups")
+    private List<GroupListing> groups;
+
+    @JsonProperty("facets")
+    private Map<String, Map<String, Integer>> facets;
+
+    /**
+     * @return The version of the groups data which answered the query.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Instant getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated(Instant lastUpdated) {
+        this.lastUpdated = lastUpdated;
+    }
+
+    /**
+     * @return The number of matching groups on every page.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public void setPage(int page) {
+        this.page = page;
+    }
+
+    public int getPerPage() {
+        return perPage;
+    }
+
+    public void setPerPage(int perPage) {
+        this.perPage = perPage;
+    }
+
+    public List<GroupListing> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(List<GroupListing> groups) {
+        this.groups = groups;
+    }
+
+    /**
+     * @return For each search field, the number of matches each value would give with the other filters applied.
+     */
+    public Map<String, Map<String, Integer>> getFacets() {
+        return facets;
+    }
+
+    public void setFacets(Map<String, Map<String, Integer>> facets) {
+        this.facets = facets;
+    }
+}
@@ -0,0 +1,71 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * The groups which share one campus or area, with facets counted over just those groups.
+ *
+ * Facet positions refer to this shard's groups, not the whole {@link GroupsCollection}.
+ */
+public class GroupsShard {
+
+    @JsonProperty("id")
+    private String id;
+
+    @JsonProperty("label")
+    private String label;
+
+    @JsonProperty("group-count")
+    private int groupCount;
+
+    @JsonProperty("groups")
+    private List<GroupSearchDocument> groups;
+
+    @JsonProperty("facets")
+    private List<Facet> facets;
+
+    /**
+     * @return The id of the campus or area, or "none" for groups without one.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public void setLabel(String label) {
+        this.label = label;
+    }
+
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    public void setGroupCount(int groupCount) {
+        this.groupCount = groupCount;
+    }
+
+    public List<GroupSearchDocument> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(List<GroupSearchDocument> groups) {
+        this.groups = groups;
+    }
+
+    public List<Facet> getFacets() {
+        return facets;
+    }
+
+    public void setFacets(List<Facet> facets) {
+        this.facets = facets;
+    }
+}
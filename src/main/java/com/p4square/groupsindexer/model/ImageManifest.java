@@ -0,0 +1,56 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ImageManifest records where each mirrored group image came from and what was uploaded.
+ *
+ * The manifest is shared by the image workers, so it is safe to update concurrently. It holds CCB's source URLs,
+ * which may carry access tokens, so it is kept with the sync's private state and never published.
+ */
+public class ImageManifest {
+
+    @JsonProperty("images")
+    private Map<Integer, ImageManifestEntry> images;
+
+    public ImageManifest() {
+        images = new ConcurrentHashMap<>();
+    }
+
+    public Map<Integer, ImageManifestEntry> getImages() {
+        return images;
+    }
+
+    public void setImages(Map<Integer, ImageManifestEntry> images) {
+        this.images = new ConcurrentHashMap<>(images);
+    }
+
+    @JsonIgnore
+    public ImageManifestEntry get(int groupId) {
+        return images.get(groupId);
+    }
+
+    public void put(int groupId, ImageManifestEntry entry) {
+        images.put(groupId, entry);
+    }
+
+    public void remove(int groupId) {
+        images.remove(groupId);
+    }
+
+    public boolean contains(int groupId) {
+        return images.containsKey(groupId);
+    }
+
+    /**
+     * Remove every entry for a group not in groupIds.
+     */
+    public void retainAll(Collection<Integer> groupIds) {
+        images.keySet().retainAll(groupIds);
+    }
+}
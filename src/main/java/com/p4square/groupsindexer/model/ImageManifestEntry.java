@@ -0,0 +1,62 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The source and content hash of one mirrored group image.
+ */
+public class ImageManifestEntry {
+
+    @JsonProperty("source-url")
+    private String sourceUrl;
+
+    @JsonProperty("etag")
+    private String etag;
+
+    @JsonProperty("last-modified")
+    private String lastModified;
+
+    @JsonProperty("sha256")
+    private String sha256;
+
+    public ImageManifestEntry() { }
+
+    public ImageManifestEntry(String sourceUrl, String etag, String lastModified, String sha256) {
+        this.sourceUrl = sourceUrl;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.sha256 = sha256;
+    }
+
+    public String getSourceUrl() {
+        return sourceUrl;
+    }
+
+    public void setSourceUrl(String sourceUrl) {
+        this.sourceUrl = sourceUrl;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public void setEtag(String etag) {
+        this.etag = etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+}
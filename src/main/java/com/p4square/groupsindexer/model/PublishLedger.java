@@ -0,0 +1,39 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * PublishLedger records the content hash of every published object, so unchanged objects are not rewritten.
+ */
+public class PublishLedger {
+
+    @JsonProperty("hashes")
+    private Map<String, String> hashes;
+
+    public PublishLedger() {
+        hashes = new ConcurrentHashMap<>();
+    }
+
+    public Map<String, String> getHashes() {
+        return hashes;
+    }
+
+    public void setHashes(Map<String, String> hashes) {
+        this.hashes = new ConcurrentHashMap<>(hashes);
+    }
+
+    public String get(String key) {
+        return hashes.get(key);
+    }
+
+    public void put(String key, String hash) {
+        hashes.put(key, hash);
+    }
+
+    public void remove(String key) {
+        hashes.remove(key);
+    }
+}
@@ -2,6 +2,14 @@ package com.p4square.groupsindexer.model;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.Objects;
+
+/**
+ * A reference to a CCB entity by id, with a human readable label.
+ *
+ * References produced by the {@link GroupSearchDocumentAdapter} are shared between documents and must not be
+ * modified.
+ */
 public class Reference {
 
     @JsonProperty("id")
@@ -10,6 +18,13 @@ public class Reference {
     @JsonProperty("label")
     private String label;
 
+    public Reference() { }
+
+    public Reference(String id, String label) {
+        this.id = id;
+        this.label = label;
+    }
+
     public String getId() {
         return id;
     }
@@ -25,4 +40,21 @@ public class Reference {
     public void setLabel(String label) {
         this.label = label;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Reference)) {
+            return false;
+        }
+        final Reference other = (Reference) o;
+        return Objects.equals(id, other.id) && Objects.equals(label, other.label);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, label);
+    }
 }
@@ -0,0 +1,37 @@
+package com.p4square.groupsindexer.model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ReferencePool hands out one shared {@link Reference} instance for each distinct id and label.
+ *
+ * Most groups share the same handful of campuses, types and meeting days, so pooling keeps one copy of each in
+ * memory instead of one per group. Lookups for references already in the pool do not allocate.
+ */
+public class ReferencePool {
+
+    private final Map<Integer, Map<String, Reference>> pool = new ConcurrentHashMap<>();
+
+    /**
+     * @param id The CCB id.
+     * @param label The label. May be null.
+     * @return The shared Reference for the id and label.
+     */
+    public Reference get(int id, String label) {
+        final Map<String, Reference> byLabel = pool.computeIfAbsent(id, k -> new ConcurrentHashMap<>());
+        return byLabel.computeIfAbsent(label == null ? "" : label,
+                k -> new Reference(String.valueOf(id), label));
+    }
+
+    /**
+     * @return The number of distinct references in the pool.
+     */
+    public int size() {
+        int size = 0;
+        for (Map<String, Reference> byLabel : pool.values()) {
+            size += byLabel.size();
+        }
+        return size;
+    }
+}
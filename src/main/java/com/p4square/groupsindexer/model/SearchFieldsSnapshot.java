@@ -0,0 +1,58 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A persisted copy of the search fields, used to warm the cache after a cold start.
+ */
+public class SearchFieldsSnapshot {
+
+    /**
+     * Incremented whenever the meaning of the persisted fields changes, so old snapshots are ignored.
+     */
+    public static final int CURRENT_VERSION = 1;
+
+    @JsonProperty("version")
+    private int version;
+
+    @JsonProperty("fetched-at")
+    private Instant fetchedAt;
+
+    @JsonProperty("search-fields")
+    private List<SearchField> searchFields;
+
+    public SearchFieldsSnapshot() { }
+
+    public SearchFieldsSnapshot(Instant fetchedAt, List<SearchField> searchFields) {
+        this.version = CURRENT_VERSION;
+        this.fetchedAt = fetchedAt;
+        this.searchFields = searchFields;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public Instant getFetchedAt() {
+        return fetchedAt;
+    }
+
+    public void setFetchedAt(Instant fetchedAt) {
+        this.fetchedAt = fetchedAt;
+    }
+
+    public List<SearchField> getSearchFields() {
+        return searchFields;
+    }
+
+    public void setSearchFields(List<SearchField> searchFields) {
+        this.searchFields = searchFields;
+    }
+}
@@ -0,0 +1,81 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Describes one published {@link GroupsShard}.
+ */
+public class ShardEntry {
+
+    @JsonProperty("id")
+    private String id;
+
+    @JsonProperty("label")
+    private String label;
+
+    @JsonProperty("url")
+    private String url;
+
+    @JsonProperty("group-count")
+    private int groupCount;
+
+    @JsonProperty("size")
+    private long size;
+
+    @JsonProperty("sha256")
+    private String sha256;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public void setLabel(String label) {
+        this.label = label;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    public void setGroupCount(int groupCount) {
+        this.groupCount = groupCount;
+    }
+
+    /**
+     * @return The uncompressed size of the shard in bytes.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    /**
+     * @return The hex encoded SHA-256 of the uncompressed shard.
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+}
@@ -0,0 +1,71 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonView;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lists the shards the groups are partitioned into.
+ *
+ * A client which only needs one campus or area downloads that shard instead of the whole groups data.
+ */
+public class ShardManifest {
+
+    @JsonProperty("shard-by")
+    private String shardBy;
+
+    @JsonProperty("version")
+    private long version;
+
+    @JsonProperty("last-updated")
+    @JsonView(Views.Timestamps.class)
+    private Instant lastUpdated;
+
+    @JsonProperty("shards")
+    private List<ShardEntry> shards;
+
+    public ShardManifest() {
+        shards = new ArrayList<>();
+    }
+
+    /**
+     * @return The search document property the groups are partitioned by, campus or area.
+     */
+    public String getShardBy() {
+        return shardBy;
+    }
+
+    public void setShardBy(String shardBy) {
+        this.shardBy = shardBy;
+    }
+
+    /**
+     * @return The version of the groups data the shards were cut from.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Instant getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated(Instant lastUpdated) {
+        this.lastUpdated = lastUpdated;
+    }
+
+    public List<ShardEntry> getShards() {
+        return shards;
+    }
+
+    public void setShards(List<ShardEntry> shards) {
+        this.shards = new ArrayList<>(shards);
+    }
+}
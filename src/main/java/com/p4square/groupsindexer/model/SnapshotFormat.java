@@ -0,0 +1,65 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One encoding of the groups snapshot, listed in the {@link ChangefeedManifest}.
+ */
+public class SnapshotFormat {
+
+    @JsonProperty("name")
+    private String name;
+
+    @JsonProperty("content-type")
+    private String contentType;
+
+    @JsonProperty("schema-version")
+    private int schemaVersion;
+
+    @JsonProperty("url")
+    private String url;
+
+    public SnapshotFormat() { }
+
+    public SnapshotFormat(String name, String contentType, int schemaVersion, String url) {
+        this.name = name;
+        this.contentType = contentType;
+        this.schemaVersion = schemaVersion;
+        this.url = url;
+    }
+
+    /**
+     * @return "json", "json-compact" or "cbor-compact".
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public int getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    public void setSchemaVersion(int schemaVersion) {
+        this.schemaVersion = schemaVersion;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+}
@@ -0,0 +1,121 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The progress of a sync which ran out of time, so the next invocation can continue where it stopped.
+ *
+ * Nothing is published until the sync completes. The checkpoint holds the documents fetched so far, so it is kept
+ * with the sync's private state where readers can't see a partial sync.
+ */
+public class SyncCheckpoint {
+
+    @JsonProperty("started")
+    private Instant started;
+
+    @JsonProperty("last-full-sync")
+    private Instant lastFullSync;
+
+    @JsonProperty("modified-since")
+    private LocalDate modifiedSince;
+
+    @JsonProperty("next-page")
+    private int nextPage;
+
+    @JsonProperty("fetch-complete")
+    private boolean fetchComplete;
+
+    @JsonProperty("fetch-resumed")
+    private boolean fetchResumed;
+
+    @JsonProperty("groups")
+    private List<GroupSearchDocument> groups;
+
+    public SyncCheckpoint() {
+        nextPage = 1;
+        groups = new ArrayList<>();
+    }
+
+    /**
+     * @return When the sync started. The published data is stamped with this time.
+     */
+    public Instant getStarted() {
+        return started;
+    }
+
+    public void setStarted(Instant started) {
+        this.started = started;
+    }
+
+    public Instant getLastFullSync() {
+        return lastFullSync;
+    }
+
+    public void setLastFullSync(Instant lastFullSync) {
+        this.lastFullSync = lastFullSync;
+    }
+
+    /**
+     * @return The date profiles are fetched from for an incremental sync, or null for a full sync.
+     */
+    public LocalDate getModifiedSince() {
+        return modifiedSince;
+    }
+
+    public void setModifiedSince(LocalDate modifiedSince) {
+        this.modifiedSince = modifiedSince;
+    }
+
+    /**
+     * @return The first page of profiles which has not been processed.
+     */
+    public int getNextPage() {
+        return nextPage;
+    }
+
+    public void setNextPage(int nextPage) {
+        this.nextPage = nextPage;
+    }
+
+    /**
+     * @return true if every page has been processed and only publishing remains.
+     */
+    public boolean isFetchComplete() {
+        return fetchComplete;
+    }
+
+    public void setFetchComplete(boolean fetchComplete) {
+        this.fetchComplete = fetchComplete;
+    }
+
+    /**
+     * CCB pages by position, so groups created, deleted or filtered differently between invocations shift the
+     * pages under a resumed fetch. Some groups may then be fetched twice and others skipped.
+     *
+     * @return true if the fetch continued from a page saved by an earlier invocation.
+     */
+    public boolean isFetchResumed() {
+        return fetchResumed;
+    }
+
+    public void setFetchResumed(boolean fetchResumed) {
+        this.fetchResumed = fetchResumed;
+    }
+
+    /**
+     * @return The documents of every group processed so far. For an incremental sync this starts with the
+     *         previously published groups.
+     */
+    public List<GroupSearchDocument> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(List<GroupSearchDocument> groups) {
+        this.groups = groups;
+    }
+}
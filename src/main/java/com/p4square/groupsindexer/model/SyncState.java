@@ -0,0 +1,57 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+
+/**
+ * When the last sync completed, written after every completed sync.
+ *
+ * Unchanged documents are not rewritten, so the timestamps in the groups data only say when its content last
+ * changed. The next sync decides between a full and an incremental sync from this instead.
+ */
+public class SyncState {
+
+    @JsonProperty("last-updated")
+    private Instant lastUpdated;
+
+    @JsonProperty("last-full-sync")
+    private Instant lastFullSync;
+
+    @JsonProperty("full-sync-required")
+    private boolean fullSyncRequired;
+
+    /**
+     * @return When the last completed sync started.
+     */
+    public Instant getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated(Instant lastUpdated) {
+        this.lastUpdated = lastUpdated;
+    }
+
+    /**
+     * @return When the last completed full sync started.
+     */
+    public Instant getLastFullSync() {
+        return lastFullSync;
+    }
+
+    public void setLastFullSync(Instant lastFullSync) {
+        this.lastFullSync = lastFullSync;
+    }
+
+    /**
+     * @return true if the last sync resumed its fetch from a saved page, so it may have skipped groups or kept
+     *         groups which are gone. The next sync is then a full sync, which reconciles them.
+     */
+    public boolean isFullSyncRequired() {
+        return fullSyncRequired;
+    }
+
+    public void setFullSyncRequired(boolean fullSyncRequired) {
+        this.fullSyncRequired = fullSyncRequired;
+    }
+}
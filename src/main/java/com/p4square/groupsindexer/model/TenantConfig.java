@@ -0,0 +1,58 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The configuration of one CCB instance synced by {@link com.p4square.groupsindexer.SyncTenants}.
+ */
+public class TenantConfig {
+
+    @JsonProperty("id")
+    private String id;
+
+    @JsonProperty("output-prefix")
+    private String outputPrefix;
+
+    @JsonProperty("settings")
+    private Map<String, String> settings;
+
+    public TenantConfig() {
+        settings = new HashMap<>();
+    }
+
+    /**
+     * @return A short name for the tenant, used in logs, metrics and local file names.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    /**
+     * @return The prefix of every key the tenant publishes, such as "north/", or null to publish at the root.
+     */
+    public String getOutputPrefix() {
+        return outputPrefix;
+    }
+
+    public void setOutputPrefix(String outputPrefix) {
+        this.outputPrefix = outputPrefix;
+    }
+
+    /**
+     * @return SyncGroups settings which apply to this tenant only.
+     */
+    public Map<String, String> getSettings() {
+        return settings;
+    }
+
+    public void setSettings(Map<String, String> settings) {
+        this.settings = settings;
+    }
+}
@@ -0,0 +1,27 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The CCB instances synced by {@link com.p4square.groupsindexer.SyncTenants}.
+ */
+public class TenantsConfig {
+
+    @JsonProperty("tenants")
+    private List<TenantConfig> tenants;
+
+    public TenantsConfig() {
+        tenants = new ArrayList<>();
+    }
+
+    public List<TenantConfig> getTenants() {
+        return tenants;
+    }
+
+    public void setTenants(List<TenantConfig> tenants) {
+        this.tenants = tenants;
+    }
+}
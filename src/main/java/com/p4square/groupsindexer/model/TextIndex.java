@@ -0,0 +1,134 @@
+package com.p4square.groupsindexer.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonView;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TextIndex is an inverted index over the text of each group for BM25 ranked search and typeahead.
+ *
+ * Documents are identified by their position in the {@link GroupsCollection} with the same
+ * {@code content-version}. {@code postings[i]} holds alternating (position, term frequency) pairs for
+ * {@code terms[i]}, sorted by position. Term frequencies are weighted by the field the term appeared in.
+ * {@code prefixes} maps every term prefix of up to {@link #getMaxPrefixLength()} characters to the indexes of the
+ * most common terms starting with it.
+ */
+public class TextIndex {
+    @JsonProperty("last-updated")
+    @JsonView(Views.Timestamps.class)
+    private Instant lastUpdated;
+
+    @JsonProperty("content-version")
+    private String contentVersion;
+
+    @JsonProperty("k1")
+    private double k1;
+
+    @JsonProperty("b")
+    private double b;
+
+    @JsonProperty("average-length")
+    private double averageLength;
+
+    @JsonProperty("lengths")
+    private int[] lengths;
+
+    @JsonProperty("terms")
+    private List<String> terms;
+
+    @JsonProperty("postings")
+    private List<int[]> postings;
+
+    @JsonProperty("max-prefix-length")
+    private int maxPrefixLength;
+
+    @JsonProperty("prefixes")
+    private Map<String, int[]> prefixes;
+
+    public Instant getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated(Instant lastUpdated) {
+        this.lastUpdated = lastUpdated;
+    }
+
+    /**
+     * @return The {@link GroupsCollection#getContentVersion() content version} of the groups data the postings
+     *         were built from.
+     */
+    public String getContentVersion() {
+        return contentVersion;
+    }
+
+    public void setContentVersion(String contentVersion) {
+        this.contentVersion = contentVersion;
+    }
+
+    public double getK1() {
+        return k1;
+    }
+
+    public void setK1(double k1) {
+        this.k1 = k1;
+    }
+
+    public double getB() {
+        return b;
+    }
+
+    public void setB(double b) {
+        this.b = b;
+    }
+
+    public double getAverageLength() {
+        return averageLength;
+    }
+
+    public void setAverageLength(double averageLength) {
+        this.averageLength = averageLength;
+    }
+
+    public int[] getLengths() {
+        return lengths;
+    }
+
+    public void setLengths(int[] lengths) {
+        this.lengths = lengths;
+    }
+
+    public List<String> getTerms() {
+        return terms;
+    }
+
+    public void setTerms(List<String> terms) {
+        this.terms = terms;
+    }
+
+    public List<int[]> getPostings() {
+        return postings;
+    }
+
+    public void setPostings(List<int[]> postings) {
+        this.postings = postings;
+    }
+
+    public int getMaxPrefixLength() {
+        return maxPrefixLength;
+    }
+
+    public void setMaxPrefixLength(int maxPrefixLength) {
+        this.maxPrefixLength = maxPrefixLength;
+    }
+
+    public Map<String, int[]> getPrefixes() {
+        return prefixes;
+    }
+
+    public void setPrefixes(Map<String, int[]> prefixes) {
+        this.prefixes = prefixes;
+    }
+}
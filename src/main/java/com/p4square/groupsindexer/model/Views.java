@@ -0,0 +1,28 @@
+package com.p4square.groupsindexer.model;
+
+/**
+ * Jackson views used when publishing.
+ *
+ * Properties without a view are always written. Writing with the {@link Content} view leaves out the
+ * {@link Timestamps} and {@link ContentVersion} properties, so two versions of a document with the same content
+ * serialize identically.
+ */
+public final class Views {
+
+    private Views() { }
+
+    /**
+     * The content of a document.
+     */
+    public static class Content { }
+
+    /**
+     * When a document was generated.
+     */
+    public static class Timestamps { }
+
+    /**
+     * A hash of the document's own content, which can't be part of the content it is computed from.
+     */
+    public static class ContentVersion { }
+}
@@ -0,0 +1,166 @@
+package com.p4square.groupsindexer.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Writes objects as files under a local directory. Metadata is not stored.
+ *
+ * Each object is written to a temporary file and moved into place, so readers never see a partial object.
+ */
+public class FileSystemOutputSink implements OutputSink {
+
+    private final Path root;
+
+    public FileSystemOutputSink(Path root) {
+        this.root = root.toAbsolutePath();
+    }
+
+    @Override
+    public SinkOutputStream openStream(String key, ObjectInfo info) throws IOException {
+        final Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        final Path temp = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+        return new FileOutputStream(temp, target);
+    }
+
+    @Override
+    public void putFile(String key, File file, ObjectInfo info, int timeoutMs) throws IOException {
+        final Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        final Path temp = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+        try {
+            Files.copy(file.toPath(), temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public InputStream read(String key) throws IOException {
+        try {
+            return Files.newInputStream(resolve(key));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Files are replaced by moving a new file into place, so the size and modification time identify a version.
+     */
+    @Override
+    public String getETag(String key) throws IOException {
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(resolve(key), BasicFileAttributes.class);
+            return attributes.size() + "-" + attributes.lastModifiedTime().toMillis();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public List<String> list(String prefix) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return Collections.emptyList();
+        }
+
+        final List<String> keys = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.filter(Files::isRegularFile)
+                    .filter(path -> !path.getFileName().toString().startsWith(".upload-"))
+                    .map(path -> root.relativize(path).toString().replace(File.separatorChar, '/'))
+                    .filter(key -> key.startsWith(prefix))
+                    .forEach(keys::add);
+        }
+        return keys;
+    }
+
+    @Override
+    public void delete(Collection<String> keys) throws IOException {
+        for (String key : keys) {
+            Files.deleteIfExists(resolve(key));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return root.toUri().toString();
+    }
+
+    private Path resolve(String key) {
+        final Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root)) {
+            throw new IllegalArgumentException("Key escapes the output directory: " + key);
+        }
+        return path;
+    }
+
+    /**
+     * Writes to a temporary file which replaces the target on close.
+     */
+    private static class FileOutputStream extends SinkOutputStream {
+        private final Path temp;
+        private final Path target;
+        private final OutputStream out;
+        private boolean closed;
+
+        FileOutputStream(Path temp, Path target) throws IOException {
+            this.temp = temp;
+            this.target = target;
+            this.out = Files.newOutputStream(temp);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            try {
+                out.close();
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        @Override
+        public void abort() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            try {
+                out.close();
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                // Ignore. The temporary file is hidden from list().
+            }
+        }
+    }
+}
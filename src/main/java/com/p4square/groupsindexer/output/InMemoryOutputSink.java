@@ -0,0 +1,157 @@
+package com.p4square.groupsindexer.output;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps objects in memory. Useful for measuring the sync without any storage latency.
+ */
+public class InMemoryOutputSink implements OutputSink {
+
+    /**
+     * An object's content and metadata.
+     */
+    public static class StoredObject {
+        private final byte[] content;
+        private final ObjectInfo info;
+        private final String etag;
+
+        StoredObject(byte[] content, ObjectInfo info) {
+            this.content = content;
+            this.info = info;
+            this.etag = String.valueOf(VERSIONS.incrementAndGet());
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        public ObjectInfo getInfo() {
+            return info;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+    }
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final ConcurrentNavigableMap<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+
+    @Override
+    public SinkOutputStream openStream(final String key, final ObjectInfo info) {
+        return new SinkOutputStream() {
+            private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            private boolean closed;
+
+            @Override
+            public void write(int b) throws IOException {
+                ensureOpen();
+                buffer.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ensureOpen();
+                buffer.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                if (!closed) {
+                    closed = true;
+                    objects.put(key, new StoredObject(buffer.toByteArray(), info));
+                }
+            }
+
+            @Override
+            public void abort() {
+                closed = true;
+            }
+
+            private void ensureOpen() throws IOException {
+                if (closed) {
+                    throw new IOException("Stream closed");
+                }
+            }
+        };
+    }
+
+    @Override
+    public void putFile(String key, File file, ObjectInfo info, int timeoutMs) throws IOException {
+        objects.put(key, new StoredObject(Files.readAllBytes(file.toPath()), info));
+    }
+
+    @Override
+    public InputStream read(String key) {
+        final StoredObject object = objects.get(key);
+        return object != null ? new ByteArrayInputStream(object.getContent()) : null;
+    }
+
+    @Override
+    public String getETag(String key) {
+        final StoredObject object = objects.get(key);
+        return object != null ? object.getETag() : null;
+    }
+
+    @Override
+    public List<String> list(String prefix) {
+        final List<String> keys = new ArrayList<>();
+        for (String key : objects.tailMap(prefix).keySet()) {
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    @Override
+    public void delete(Collection<String> keys) {
+        for (String key : keys) {
+            objects.remove(key);
+        }
+    }
+
+    /**
+     * @return The object stored at key, or null if there is no such object.
+     */
+    public StoredObject get(String key) {
+        return objects.get(key);
+    }
+
+    /**
+     * @return Every key in the sink, in order.
+     */
+    public Collection<String> keys() {
+        return Collections.unmodifiableSet(objects.keySet());
+    }
+
+    /**
+     * @return The total size of every object in the sink.
+     */
+    public long getTotalBytes() {
+        long total = 0;
+        for (StoredObject object : objects.values()) {
+            total += object.getContent().length;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "memory://";
+    }
+}
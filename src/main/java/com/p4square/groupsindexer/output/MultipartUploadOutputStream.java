@@ -0,0 +1,178 @@
+package com.p4square.groupsindexer.output;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An OutputStream which writes to an S3 object one part at a time.
+ *
+ * At most one part is held in memory. The part buffer starts small and grows as needed, so small objects are
+ * cheap. Objects smaller than a single part are written with a plain PUT.
+ * The object only becomes visible when the stream is closed; call {@link #abort()} instead to discard it.
+ */
+public class MultipartUploadOutputStream extends SinkOutputStream {
+
+    /**
+     * The smallest part size S3 allows for every part but the last.
+     */
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final AmazonS3 s3Client;
+    private final String bucket;
+    private final String key;
+    private final ObjectMetadata metadata;
+
+    private final int partSize;
+    private byte[] buffer;
+    private int position;
+
+    private String uploadId;
+    private final List<PartETag> partETags;
+    private boolean closed;
+
+    public MultipartUploadOutputStream(AmazonS3 s3Client, String bucket, String key, ObjectMetadata metadata) {
+        this(s3Client, bucket, key, metadata, MIN_PART_SIZE);
+    }
+
+    public MultipartUploadOutputStream(AmazonS3 s3Client, String bucket, String key, ObjectMetadata metadata,
+                                       int partSize) {
+        if (partSize < MIN_PART_SIZE) {
+            throw new IllegalArgumentException("partSize must be at least " + MIN_PART_SIZE);
+        }
+
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.key = key;
+        this.metadata = metadata;
+        this.partSize = partSize;
+        this.buffer = new byte[Math.min(INITIAL_BUFFER_SIZE, partSize)];
+        this.partETags = new ArrayList<>();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (position == buffer.length) {
+            makeRoom();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (position == buffer.length) {
+                makeRoom();
+            }
+            final int count = Math.min(len, buffer.length - position);
+            System.arraycopy(b, off, buffer, position, count);
+            position += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Finish the upload and make the object visible.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            if (uploadId == null) {
+                metadata.setContentLength(position);
+                s3Client.putObject(new PutObjectRequest(bucket, key,
+                        new ByteArrayInputStream(buffer, 0, position), metadata));
+            } else {
+                if (position > 0) {
+                    uploadPart();
+                }
+                s3Client.completeMultipartUpload(
+                        new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags));
+            }
+        } catch (RuntimeException e) {
+            abortUpload();
+            throw new IOException("Failed to write s3://" + bucket + "/" + key, e);
+        }
+    }
+
+    @Override
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        abortUpload();
+    }
+
+    /**
+     * Grow the buffer, or upload it if it already holds a full part.
+     */
+    private void makeRoom() throws IOException {
+        if (buffer.length < partSize) {
+            buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, partSize));
+        } else {
+            uploadPart();
+        }
+    }
+
+    private void uploadPart() throws IOException {
+        try {
+            if (uploadId == null) {
+                uploadId = s3Client.initiateMultipartUpload(
+                        new InitiateMultipartUploadRequest(bucket, key, metadata)).getUploadId();
+            }
+
+            final UploadPartRequest request = new UploadPartRequest()
+                    .withBucketName(bucket)
+                    .withKey(key)
+                    .withUploadId(uploadId)
+                    .withPartNumber(partETags.size() + 1)
+                    .withInputStream(new ByteArrayInputStream(buffer, 0, position))
+                    .withPartSize(position);
+            partETags.add(s3Client.uploadPart(request).getPartETag());
+            position = 0;
+
+        } catch (RuntimeException e) {
+            closed = true;
+            abortUpload();
+            throw new IOException("Failed to write s3://" + bucket + "/" + key, e);
+        }
+    }
+
+    private void abortUpload() {
+        if (uploadId != null) {
+            try {
+                s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+            } catch (RuntimeException e) {
+                // Ignore. The bucket's lifecycle rules clean up abandoned uploads.
+            }
+            uploadId = null;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.p4square.groupsindexer.output;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ObjectInfo holds the HTTP metadata stored alongside an object in an {@link OutputSink}.
+ */
+public class ObjectInfo {
+
+    private String contentType;
+    private String contentEncoding;
+    private String cacheControl;
+    private final Map<String, String> userMetadata = new HashMap<>();
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public ObjectInfo withContentType(String contentType) {
+        this.contentType = contentType;
+        return this;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public ObjectInfo withContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+        return this;
+    }
+
+    public String getCacheControl() {
+        return cacheControl;
+    }
+
+    public ObjectInfo withCacheControl(String cacheControl) {
+        this.cacheControl = cacheControl;
+        return this;
+    }
+
+    /**
+     * @return Custom metadata. S3 stores these as x-amz-meta-* headers.
+     */
+    public Map<String, String> getUserMetadata() {
+        return Collections.unmodifiableMap(userMetadata);
+    }
+
+    public ObjectInfo withUserMetadata(String name, String value) {
+        userMetadata.put(name, value);
+        return this;
+    }
+}
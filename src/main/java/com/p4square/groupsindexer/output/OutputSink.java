@@ -0,0 +1,59 @@
+package com.p4square.groupsindexer.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * OutputSink is the key/value store the sync publishes into.
+ *
+ * In production this is the output bucket. Local filesystem and in-memory sinks let the whole sync run offline.
+ * Keys are '/' separated paths, such as "data/groups-data.json".
+ */
+public interface OutputSink {
+
+    /**
+     * Open a stream to write an object. The object replaces any existing object when the stream is closed.
+     *
+     * @param key The key to write.
+     * @param info Metadata to store with the object.
+     * @return A stream to write the object's content to.
+     */
+    SinkOutputStream openStream(String key, ObjectInfo info) throws IOException;
+
+    /**
+     * Copy a local file into the sink.
+     *
+     * @param key The key to write.
+     * @param file The file to copy.
+     * @param info Metadata to store with the object.
+     * @param timeoutMs The longest the copy may take. Sinks which cannot time out may ignore this.
+     * @throws java.io.InterruptedIOException If the copy did not finish in time.
+     */
+    void putFile(String key, File file, ObjectInfo info, int timeoutMs) throws IOException;
+
+    /**
+     * @param key The key to read.
+     * @return The object's content, or null if there is no such object. The caller must close the stream.
+     */
+    InputStream read(String key) throws IOException;
+
+    /**
+     * @param key The key to check.
+     * @return A tag which changes whenever the object changes, or null if there is no such object.
+     */
+    String getETag(String key) throws IOException;
+
+    /**
+     * @param prefix Key prefix to list.
+     * @return Every key which starts with prefix.
+     */
+    List<String> list(String prefix) throws IOException;
+
+    /**
+     * Delete objects. Keys which do not exist are ignored.
+     */
+    void delete(Collection<String> keys) throws IOException;
+}
@@ -0,0 +1,71 @@
+package com.p4square.groupsindexer.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Stores objects under a key prefix of another sink, so several syncs can share one bucket.
+ *
+ * Keys passed to and returned from this sink do not include the prefix.
+ */
+public class PrefixedOutputSink implements OutputSink {
+
+    private final OutputSink delegate;
+    private final String prefix;
+
+    /**
+     * @param delegate The sink to store objects in.
+     * @param prefix The prefix added to every key, such as "north/".
+     */
+    public PrefixedOutputSink(OutputSink delegate, String prefix) {
+        this.delegate = delegate;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public SinkOutputStream openStream(String key, ObjectInfo info) throws IOException {
+        return delegate.openStream(prefix + key, info);
+    }
+
+    @Override
+    public void putFile(String key, File file, ObjectInfo info, int timeoutMs) throws IOException {
+        delegate.putFile(prefix + key, file, info, timeoutMs);
+    }
+
+    @Override
+    public InputStream read(String key) throws IOException {
+        return delegate.read(prefix + key);
+    }
+
+    @Override
+    public String getETag(String key) throws IOException {
+        return delegate.getETag(prefix + key);
+    }
+
+    @Override
+    public List<String> list(String keyPrefix) throws IOException {
+        final List<String> keys = new ArrayList<>();
+        for (String key : delegate.list(prefix + keyPrefix)) {
+            keys.add(key.substring(prefix.length()));
+        }
+        return keys;
+    }
+
+    @Override
+    public void delete(Collection<String> keys) throws IOException {
+        final List<String> prefixedKeys = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            prefixedKeys.add(prefix + key);
+        }
+        delegate.delete(prefixedKeys);
+    }
+
+    @Override
+    public String toString() {
+        return delegate + "/" + prefix;
+    }
+}
@@ -0,0 +1,146 @@
+package com.p4square.groupsindexer.output;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Writes objects to an S3 bucket.
+ */
+public class S3OutputSink implements OutputSink {
+
+    private static final int MAX_DELETE_BATCH = 1000;
+
+    private final AmazonS3 s3Client;
+    private final String bucket;
+
+    public S3OutputSink(AmazonS3 s3Client, String bucket) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+    }
+
+    @Override
+    public SinkOutputStream openStream(String key, ObjectInfo info) {
+        return new MultipartUploadOutputStream(s3Client, bucket, key, toMetadata(info));
+    }
+
+    @Override
+    public void putFile(String key, File file, ObjectInfo info, int timeoutMs) throws IOException {
+        final ObjectMetadata metadata = toMetadata(info);
+        metadata.setContentLength(file.length());
+
+        final long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            s3Client.putObject(new PutObjectRequest(bucket, key, file)
+                    .withMetadata(metadata)
+                    .withSdkClientExecutionTimeout(timeoutMs));
+        } catch (SdkClientException e) {
+            if (System.currentTimeMillis() >= deadline) {
+                final InterruptedIOException timeout = new InterruptedIOException(
+                        "Timed out writing s3://" + bucket + "/" + key);
+                timeout.initCause(e);
+                throw timeout;
+            }
+            throw new IOException("Failed to write s3://" + bucket + "/" + key, e);
+        }
+    }
+
+    @Override
+    public InputStream read(String key) throws IOException {
+        try {
+            if (!s3Client.doesObjectExist(bucket, key)) {
+                return null;
+            }
+            return s3Client.getObject(bucket, key).getObjectContent();
+        } catch (SdkClientException e) {
+            throw new IOException("Failed to read s3://" + bucket + "/" + key, e);
+        }
+    }
+
+    @Override
+    public String getETag(String key) throws IOException {
+        try {
+            return s3Client.getObjectMetadata(bucket, key).getETag();
+        } catch (AmazonServiceException e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw new IOException("Failed to read metadata of s3://" + bucket + "/" + key, e);
+        } catch (SdkClientException e) {
+            throw new IOException("Failed to read metadata of s3://" + bucket + "/" + key, e);
+        }
+    }
+
+    @Override
+    public List<String> list(String prefix) throws IOException {
+        final List<String> keys = new ArrayList<>();
+        final ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(bucket)
+                .withPrefix(prefix);
+
+        try {
+            ListObjectsV2Result result;
+            do {
+                result = s3Client.listObjectsV2(request);
+                for (S3ObjectSummary summary : result.getObjectSummaries()) {
+                    keys.add(summary.getKey());
+                }
+                request.setContinuationToken(result.getNextContinuationToken());
+            } while (result.isTruncated());
+        } catch (SdkClientException e) {
+            throw new IOException("Failed to list s3://" + bucket + "/" + prefix, e);
+        }
+
+        return keys;
+    }
+
+    @Override
+    public void delete(Collection<String> keys) throws IOException {
+        final List<String> keyList = new ArrayList<>(keys);
+        try {
+            for (int i = 0; i < keyList.size(); i += MAX_DELETE_BATCH) {
+                final List<String> batch = keyList.subList(i, Math.min(keyList.size(), i + MAX_DELETE_BATCH));
+                s3Client.deleteObjects(new DeleteObjectsRequest(bucket)
+                        .withKeys(batch.toArray(new String[0]))
+                        .withQuiet(true));
+            }
+        } catch (SdkClientException e) {
+            throw new IOException("Failed to delete from s3://" + bucket, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "s3://" + bucket;
+    }
+
+    private static ObjectMetadata toMetadata(ObjectInfo info) {
+        final ObjectMetadata metadata = new ObjectMetadata();
+        if (info.getContentType() != null) {
+            metadata.setContentType(info.getContentType());
+        }
+        if (info.getContentEncoding() != null) {
+            metadata.setContentEncoding(info.getContentEncoding());
+        }
+        if (info.getCacheControl() != null) {
+            metadata.setCacheControl(info.getCacheControl());
+        }
+        metadata.setUserMetadata(new HashMap<>(info.getUserMetadata()));
+        return metadata;
+    }
+}
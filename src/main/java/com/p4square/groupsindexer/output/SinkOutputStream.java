@@ -0,0 +1,17 @@
+package com.p4square.groupsindexer.output;
+
+import java.io.OutputStream;
+
+/**
+ * An OutputStream to a single object in an {@link OutputSink}.
+ *
+ * The object only becomes visible when the stream is closed. Call {@link #abort()} instead to leave any existing
+ * object unchanged.
+ */
+public abstract class SinkOutputStream extends OutputStream {
+
+    /**
+     * Discard everything written so far. The object is left unchanged.
+     */
+    public abstract void abort();
+}